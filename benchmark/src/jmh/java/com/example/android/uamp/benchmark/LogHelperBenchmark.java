@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.benchmark;
+
+import com.example.android.uamp.utils.LogHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug log calls that don't log, as in a release build (the stub BuildConfig.DEBUG is false).
+ * Each varargs call is compared with the same call through a fixed arity overload of
+ * {@link LogHelper#d}. The allocations per call are the gc.alloc.rate.norm lines of the gc
+ * profiler.
+ *
+ * Escape analysis is turned off: ART doesn't have it, and with it the JIT can remove the
+ * varargs array, which would hide what the app allocates on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-XX:-DoEscapeAnalysis")
+public class LogHelperBenchmark {
+
+    private static final String TAG = LogHelper.makeLogTag(LogHelperBenchmark.class);
+
+    // Not final, so the JIT can't fold the calls into constants.
+    private Object mTrack = new Object();
+    private String mMediaId = "__BY_GENRE__/Genre 7|1882340932_12345";
+    // Outside of the range of cached Long instances, so boxing allocates.
+    private long mPositionMs = 187000;
+
+    // What buildFromJSON logs for every track of the catalog.
+
+    @Benchmark
+    public void twoArgsVarargs() {
+        LogHelper.d(TAG, new Object[] {"Found music track: ", mTrack});
+    }
+
+    @Benchmark
+    public void twoArgsFixed() {
+        LogHelper.d(TAG, "Found music track: ", mTrack);
+    }
+
+    @Benchmark
+    public void longArgVarargs() {
+        LogHelper.d(TAG, new Object[] {"Seeking to ", mPositionMs});
+    }
+
+    @Benchmark
+    public void longArgFixed() {
+        LogHelper.d(TAG, "Seeking to ", mPositionMs);
+    }
+
+    @Benchmark
+    public void threeArgsVarargs() {
+        LogHelper.d(TAG, new Object[] {"Playing ", mMediaId, " from the queue"});
+    }
+
+    @Benchmark
+    public void threeArgsFixed() {
+        LogHelper.d(TAG, "Playing ", mMediaId, " from the queue");
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.benchmark;
+
+import com.example.android.uamp.utils.MediaIDHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE;
+
+/**
+ * Parsing and building media IDs, which happens for every browsed item and queue item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MediaIDHelperBenchmark {
+
+    // Not final, so the JIT can't fold the calls into constants.
+    private String mMusicId = "1882340932_12345";
+    private String mGenre = "Genre 7";
+    private String mMediaId = MediaIDHelper.createMediaID(mMusicId, MEDIA_ID_MUSICS_BY_GENRE,
+            mGenre);
+
+    @Benchmark
+    public String createMediaID() {
+        return MediaIDHelper.createMediaID(mMusicId, MEDIA_ID_MUSICS_BY_GENRE, mGenre);
+    }
+
+    @Benchmark
+    public String[] getHierarchy() {
+        return MediaIDHelper.getHierarchy(mMediaId);
+    }
+
+    @Benchmark
+    public String extractMusicIDFromMediaID() {
+        return MediaIDHelper.extractMusicIDFromMediaID(mMediaId);
+    }
+
+    @Benchmark
+    public boolean hasMusicID() {
+        return MediaIDHelper.hasMusicID(mMediaId, mMusicId);
+    }
+
+    @Benchmark
+    public String getParentMediaID() {
+        return MediaIDHelper.getParentMediaID(mMediaId);
+    }
+
+    // The same check as hasMusicID, with the string splitting MediaIDHelper used to do.
+    @Benchmark
+    public boolean hasMusicIDWithSplit() {
+        int pos = mMediaId.indexOf('|');
+        return pos >= 0 && mMusicId.equals(mMediaId.substring(pos + 1));
+    }
+}
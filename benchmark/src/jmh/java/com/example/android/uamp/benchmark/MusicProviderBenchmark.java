@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.benchmark;
+
+import android.content.res.Resources;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+
+import com.example.android.uamp.model.MusicProvider;
+import com.example.android.uamp.utils.MediaIDHelper;
+import com.example.android.uamp.utils.QueueHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE;
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_SEARCH;
+
+/**
+ * Loading, browsing and searching catalogs of the given sizes with {@link MusicProvider}, and
+ * building playing queues from them with {@link QueueHelper}.
+ *
+ * Each genre has about 1/20th of the tracks, and the search word is in about 1/10th of the
+ * titles. The miss search scans the whole catalog without finding anything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MusicProviderBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"1000", "10000", "100000", "500000"})
+    public int trackCount;
+
+    private SyntheticMusicSource mSource;
+    private MusicProvider mProvider;
+    private Resources mResources;
+    private String mGenreMediaId;
+    private String mSearchMediaId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mSource = new SyntheticMusicSource(trackCount, SEED);
+        mProvider = new MusicProvider(mSource);
+        mProvider.retrieveMediaAsync(null);
+        mResources = new Resources();
+        mGenreMediaId = MediaIDHelper.createMediaID(null, MEDIA_ID_MUSICS_BY_GENRE,
+                mSource.getGenre(0));
+        mSearchMediaId = MediaIDHelper.createMediaID(null, MEDIA_ID_MUSICS_BY_SEARCH, "river");
+    }
+
+    /**
+     * Builds the indexes of a new provider: by ID, then by genre in buildListsByGenre.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MusicProvider retrieveMedia() {
+        MusicProvider provider = new MusicProvider(mSource);
+        // Synchronous with the stubbed AsyncTask.
+        provider.retrieveMediaAsync(null);
+        return provider;
+    }
+
+    @Benchmark
+    public List<MediaMetadataCompat> searchMusicBySongTitle() {
+        return mProvider.searchMusicBySongTitle("River");
+    }
+
+    @Benchmark
+    public List<MediaMetadataCompat> searchMusicBySongTitleMiss() {
+        return mProvider.searchMusicBySongTitle("no such title");
+    }
+
+    @Benchmark
+    public List<MediaBrowserCompat.MediaItem> getChildrenOfGenres() {
+        return mProvider.getChildren(MEDIA_ID_MUSICS_BY_GENRE, mResources);
+    }
+
+    @Benchmark
+    public List<MediaBrowserCompat.MediaItem> getChildrenOfGenre() {
+        return mProvider.getChildren(mGenreMediaId, mResources);
+    }
+
+    /**
+     * Converts the tracks of a genre to a queue, as when playing from a browsed genre.
+     */
+    @Benchmark
+    public List<MediaSessionCompat.QueueItem> getPlayingQueueOfGenre() {
+        return QueueHelper.getPlayingQueue(mGenreMediaId, mProvider);
+    }
+
+    /**
+     * Searches and converts the results to a queue, as when playing from a search.
+     */
+    @Benchmark
+    public List<MediaSessionCompat.QueueItem> getPlayingQueueOfSearch() {
+        return QueueHelper.getPlayingQueue(mSearchMediaId, mProvider);
+    }
+
+    /**
+     * Converts the tracks of a genre to a queue and reads every item of it, as a client showing
+     * the whole queue does.
+     */
+    @Benchmark
+    public void readPlayingQueueOfGenre(Blackhole blackhole) {
+        for (MediaSessionCompat.QueueItem item
+                : QueueHelper.getPlayingQueue(mGenreMediaId, mProvider)) {
+            blackhole.consume(item);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.benchmark;
+
+import android.content.res.Resources;
+
+import com.example.android.uamp.model.MusicProvider;
+import com.example.android.uamp.utils.MediaIDHelper;
+import com.example.android.uamp.utils.QueueHelper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE;
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_ROOT;
+
+/**
+ * Loads synthetic catalogs into a {@link MusicProvider} and reports how long loading takes, how
+ * much heap the provider uses and the latencies of browsing and searching them. Unlike the JMH
+ * benchmarks, it looks at one large catalog the way the app sees it, with skewed genres and
+ * artists if asked. It runs on the JVM and doesn't use the network:
+ *
+ * ./gradlew :benchmark:loadTest -PloadTestArgs="tracks=100000,500000 skew=1.1"
+ *
+ * The arguments are key=value pairs, see {@link #DEFAULTS}.
+ */
+public class CatalogLoadTest {
+
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+    static {
+        // Comma separated catalog sizes, each tested in turn.
+        DEFAULTS.put("tracks", "1000,10000,100000,500000");
+        DEFAULTS.put("genres", "50");
+        DEFAULTS.put("artists", "5000");
+        DEFAULTS.put("tracksPerAlbum", "12");
+        DEFAULTS.put("titleWords", "2");
+        DEFAULTS.put("nameLength", "0");
+        // Exponent of the Zipf distribution of genres and artists, 0 for uniform.
+        DEFAULTS.put("skew", "1.0");
+        DEFAULTS.put("seed", "42");
+        // Times each operation is measured, after as many warm up calls.
+        DEFAULTS.put("repeat", "30");
+    }
+
+    private final Map<String, String> mArgs;
+    private final Resources mResources = new Resources();
+
+    private CatalogLoadTest(Map<String, String> args) {
+        mArgs = args;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> parsed = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0 || !DEFAULTS.containsKey(arg.substring(0, equals))) {
+                System.err.println("Unknown argument: " + arg + ", expected one of "
+                        + DEFAULTS.keySet());
+                System.exit(1);
+            }
+            parsed.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        System.out.println("Settings: " + parsed);
+        CatalogLoadTest test = new CatalogLoadTest(parsed);
+        for (String trackCount : parsed.get("tracks").split(",")) {
+            test.run(Integer.parseInt(trackCount.trim()));
+        }
+    }
+
+    private void run(int trackCount) throws Exception {
+        System.out.println();
+        System.out.println("Catalog of " + trackCount + " tracks");
+
+        long heapBefore = getUsedHeap();
+        SyntheticMusicSource source = new SyntheticMusicSource.Builder()
+                .setTrackCount(trackCount)
+                .setGenreCount(getInt("genres"))
+                .setArtistCount(getInt("artists"))
+                .setTracksPerAlbum(getInt("tracksPerAlbum"))
+                .setTitleWordCount(getInt("titleWords"))
+                .setNameLength(getInt("nameLength"))
+                .setSkew(Double.parseDouble(mArgs.get("skew")))
+                .setSeed(Long.parseLong(mArgs.get("seed")))
+                .build();
+        long heapWithTracks = getUsedHeap();
+
+        long start = System.nanoTime();
+        final MusicProvider provider = new MusicProvider(source);
+        // Synchronous with the stubbed AsyncTask.
+        provider.retrieveMediaAsync(null);
+        long initNanos = System.nanoTime() - start;
+        long heapWithProvider = getUsedHeap();
+        if (!provider.isInitialized()) {
+            throw new IllegalStateException("The catalog didn't load");
+        }
+
+        // Genre 0 is the largest one, the last genre the smallest one of skewed catalogs.
+        final String largestGenre = MediaIDHelper.createMediaID(null, MEDIA_ID_MUSICS_BY_GENRE,
+                source.getGenre(0));
+        final String smallestGenre = MediaIDHelper.createMediaID(null, MEDIA_ID_MUSICS_BY_GENRE,
+                source.getGenre(source.getGenreCount() - 1));
+        final String titleWord = SyntheticMusicSource.getTitleWord(2);
+
+        printValue("init", String.format(Locale.US, "%.1f ms", initNanos / 1000000.0));
+        printValue("heap, tracks", toMegabytes(heapWithTracks - heapBefore));
+        printValue("heap, provider", toMegabytes(heapWithProvider - heapWithTracks));
+        printValue("largest genre", provider.getMusicsByGenre(source.getGenre(0)).size()
+                + " tracks");
+        printValue("title search", provider.searchMusicBySongTitle(titleWord).size()
+                + " results");
+        System.out.println("  Latencies (us): p50 p90 max");
+        measure("getChildren(root)", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return provider.getChildren(MEDIA_ID_ROOT, mResources);
+            }
+        });
+        measure("getChildren(genres)", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return provider.getChildren(MEDIA_ID_MUSICS_BY_GENRE, mResources);
+            }
+        });
+        measure("getChildren(largest genre)", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return provider.getChildren(largestGenre, mResources);
+            }
+        });
+        measure("getChildren(smallest genre)", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return provider.getChildren(smallestGenre, mResources);
+            }
+        });
+        measure("search title", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return provider.searchMusicBySongTitle(titleWord);
+            }
+        });
+        measure("search title, no match", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return provider.searchMusicBySongTitle("no such title");
+            }
+        });
+        measure("search artist", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return provider.searchMusicByArtist("Artist 1");
+            }
+        });
+        measure("queue of largest genre", new Callable<Object>() {
+            @Override
+            public Object call() {
+                return QueueHelper.getPlayingQueue(largestGenre, provider);
+            }
+        });
+    }
+
+    private void measure(String name, Callable<Object> operation) throws Exception {
+        int repeat = getInt("repeat");
+        long[] nanos = new long[repeat];
+        // Keeps the results reachable, so the calls can't be optimized away.
+        Object[] results = new Object[repeat];
+        for (int i = 0; i < repeat; i++) {
+            results[i] = operation.call();
+        }
+        for (int i = 0; i < repeat; i++) {
+            long start = System.nanoTime();
+            results[i] = operation.call();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        printValue(name, String.format(Locale.US, "%.1f %.1f %.1f", nanos[repeat / 2] / 1000.0,
+                nanos[repeat * 9 / 10] / 1000.0, nanos[repeat - 1] / 1000.0));
+        if (results[repeat - 1] == null) {
+            System.out.println("    (no result)");
+        }
+    }
+
+    private int getInt(String key) {
+        return Integer.parseInt(mArgs.get(key));
+    }
+
+    private static void printValue(String name, String value) {
+        System.out.println(String.format(Locale.US, "  %-30s %s", name, value));
+    }
+
+    private static String toMegabytes(long bytes) {
+        return String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    // The heap used by reachable objects, as well as the JVM can tell.
+    private static long getUsedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.benchmark;
+
+import android.support.v4.media.MediaMetadataCompat;
+
+import com.example.android.uamp.model.MusicProviderSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A catalog of made up tracks, with the same metadata as the ones of
+ * {@link com.example.android.uamp.model.RemoteJSONSource}, for benchmarks and load tests. The
+ * same settings always give the same catalog.
+ *
+ * Real catalogs are skewed: a few genres and artists have most of the tracks. With a skew above
+ * 0, genres and artists are picked with a Zipf distribution of that exponent, so genre 0 and
+ * artist 0 are the largest. With 0, they are picked uniformly.
+ *
+ * The tracks are built once, so iterating doesn't measure building them.
+ */
+public class SyntheticMusicSource implements MusicProviderSource {
+
+    public static final int DEFAULT_GENRE_COUNT = 20;
+
+    private static final String BASE_URL = "http://storage.googleapis.com/automotive-media/";
+    private static final String[] WORDS = {
+            "love", "night", "river", "blue", "summer", "fire", "dream", "road", "heart", "rain",
+            "city", "light", "dance", "home", "storm", "gold", "shadow", "wild", "sky", "echo"
+    };
+
+    private final List<MediaMetadataCompat> mTracks;
+    private final String[] mGenres;
+
+    /**
+     * Creates a catalog of the given size with the default settings.
+     */
+    public SyntheticMusicSource(int trackCount, long seed) {
+        this(new Builder().setTrackCount(trackCount).setSeed(seed));
+    }
+
+    private SyntheticMusicSource(Builder builder) {
+        Random random = new Random(builder.mSeed);
+        double[] genreWeights = getCumulativeWeights(builder.mGenreCount, builder.mSkew);
+        double[] artistWeights = getCumulativeWeights(builder.mArtistCount, builder.mSkew);
+        mGenres = new String[builder.mGenreCount];
+        for (int i = 0; i < mGenres.length; i++) {
+            mGenres[i] = pad("Genre " + i, builder.mNameLength);
+        }
+        String[] artists = new String[builder.mArtistCount];
+        for (int i = 0; i < artists.length; i++) {
+            artists[i] = pad("Artist " + i, builder.mNameLength);
+        }
+
+        mTracks = new ArrayList<>(builder.mTrackCount);
+        for (int i = 0; i < builder.mTrackCount; i++) {
+            int album = i / builder.mTracksPerAlbum;
+            String source = BASE_URL + "track_" + i + ".mp3";
+            mTracks.add(new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID,
+                            String.valueOf(source.hashCode()) + "_" + i)
+                    .putString(MusicProviderSource.CUSTOM_METADATA_TRACK_SOURCE, source)
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM,
+                            pad("Album " + album, builder.mNameLength))
+                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST,
+                            artists[pick(random, artistWeights)])
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION,
+                            60000 + random.nextInt(240000))
+                    .putString(MediaMetadataCompat.METADATA_KEY_GENRE,
+                            mGenres[pick(random, genreWeights)])
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI,
+                            BASE_URL + "album_" + album + ".jpg")
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE,
+                            makeTitle(random, builder.mTitleWordCount, i))
+                    .putLong(MediaMetadataCompat.METADATA_KEY_TRACK_NUMBER,
+                            i % builder.mTracksPerAlbum + 1)
+                    .putLong(MediaMetadataCompat.METADATA_KEY_NUM_TRACKS,
+                            builder.mTracksPerAlbum)
+                    .build());
+        }
+    }
+
+    /**
+     * @return one of the words titles are made of.
+     */
+    public static String getTitleWord(int index) {
+        return WORDS[index % WORDS.length];
+    }
+
+    public int getTrackCount() {
+        return mTracks.size();
+    }
+
+    public int getGenreCount() {
+        return mGenres.length;
+    }
+
+    /**
+     * @return the name of the genre with the given index. Genre 0 is the largest one of skewed
+     * catalogs.
+     */
+    public String getGenre(int index) {
+        return mGenres[index];
+    }
+
+    /**
+     * @return the media ID of the track at the given position in the catalog.
+     */
+    public String getMusicId(int position) {
+        return mTracks.get(position).getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+    }
+
+    @Override
+    public Iterator<MediaMetadataCompat> iterator() {
+        return mTracks.iterator();
+    }
+
+    // Weight of rank k is 1 / (k + 1)^skew, normalized and accumulated for pick().
+    private static double[] getCumulativeWeights(int count, double skew) {
+        double[] weights = new double[count];
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            weights[i] = total;
+        }
+        for (int i = 0; i < count; i++) {
+            weights[i] /= total;
+        }
+        return weights;
+    }
+
+    private static int pick(Random random, double[] cumulativeWeights) {
+        int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cumulativeWeights.length - 1);
+    }
+
+    private static String makeTitle(Random random, int wordCount, int index) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return sb.append(index).toString();
+    }
+
+    // Pads the name with letters up to the given length, so names of any length can be tested.
+    private static String pad(String name, int length) {
+        if (name.length() >= length) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(length).append(name).append(' ');
+        while (sb.length() < length) {
+            sb.append((char) ('a' + sb.length() % 26));
+        }
+        return sb.toString();
+    }
+
+    public static class Builder {
+        private int mTrackCount = 1000;
+        private int mGenreCount = DEFAULT_GENRE_COUNT;
+        private int mArtistCount = 500;
+        private int mTracksPerAlbum = 12;
+        private int mTitleWordCount = 2;
+        private int mNameLength;
+        private double mSkew;
+        private long mSeed;
+
+        public Builder setTrackCount(int trackCount) {
+            mTrackCount = trackCount;
+            return this;
+        }
+
+        public Builder setGenreCount(int genreCount) {
+            mGenreCount = Math.max(1, genreCount);
+            return this;
+        }
+
+        public Builder setArtistCount(int artistCount) {
+            mArtistCount = Math.max(1, artistCount);
+            return this;
+        }
+
+        public Builder setTracksPerAlbum(int tracksPerAlbum) {
+            mTracksPerAlbum = Math.max(1, tracksPerAlbum);
+            return this;
+        }
+
+        /**
+         * Sets the number of words of titles, before the track number that makes them unique.
+         */
+        public Builder setTitleWordCount(int titleWordCount) {
+            mTitleWordCount = titleWordCount;
+            return this;
+        }
+
+        /**
+         * Sets the minimum length of genre, artist and album names. Shorter ones are padded.
+         */
+        public Builder setNameLength(int nameLength) {
+            mNameLength = nameLength;
+            return this;
+        }
+
+        /**
+         * Sets the exponent of the Zipf distribution of genres and artists, 0 for uniform.
+         */
+        public Builder setSkew(double skew) {
+            mSkew = skew;
+            return this;
+        }
+
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public SyntheticMusicSource build() {
+            return new SyntheticMusicSource(this);
+        }
+    }
+}
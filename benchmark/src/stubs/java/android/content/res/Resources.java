@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content.res;
+
+/**
+ * JVM stand-in for the Android class of the same name, for benchmarks only. Strings are made of
+ * their resource ID and format arguments, which costs about as much as formatting a real one.
+ */
+public class Resources {
+
+    public String getString(int id) {
+        return "string/" + id;
+    }
+
+    public String getString(int id, Object... formatArgs) {
+        StringBuilder sb = new StringBuilder(getString(id));
+        for (Object arg : formatArgs) {
+            sb.append(' ').append(arg);
+        }
+        return sb.toString();
+    }
+}
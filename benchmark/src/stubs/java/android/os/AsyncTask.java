@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+import java.util.concurrent.Executor;
+
+/**
+ * JVM stand-in for the Android class of the same name, for benchmarks only. The task runs
+ * synchronously on the calling thread, so code like MusicProvider.retrieveMediaAsync finishes
+ * before returning.
+ */
+public abstract class AsyncTask<Params, Progress, Result> {
+
+    public static final Executor THREAD_POOL_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    protected abstract Result doInBackground(Params... params);
+
+    protected void onPostExecute(Result result) {
+    }
+
+    @SafeVarargs
+    public final AsyncTask<Params, Progress, Result> execute(Params... params) {
+        onPostExecute(doInBackground(params));
+        return this;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.provider;
+
+/**
+ * JVM stand-in for the Android class of the same name, for benchmarks only.
+ */
+public final class MediaStore {
+
+    public static final String EXTRA_MEDIA_ARTIST = "android.intent.extra.artist";
+    public static final String EXTRA_MEDIA_ALBUM = "android.intent.extra.album";
+    public static final String EXTRA_MEDIA_TITLE = "android.intent.extra.title";
+    public static final String EXTRA_MEDIA_FOCUS = "android.intent.extra.focus";
+    public static final String EXTRA_MEDIA_GENRE = "android.intent.extra.genre";
+
+    public static final class Audio {
+
+        public static final class Media {
+            public static final String ENTRY_CONTENT_TYPE = "vnd.android.cursor.item/audio";
+        }
+
+        public static final class Genres {
+            public static final String ENTRY_CONTENT_TYPE = "vnd.android.cursor.item/genre";
+        }
+
+        public static final class Artists {
+            public static final String ENTRY_CONTENT_TYPE = "vnd.android.cursor.item/artist";
+        }
+
+        public static final class Albums {
+            public static final String ENTRY_CONTENT_TYPE = "vnd.android.cursor.item/album";
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.media;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * JVM stand-in for the Android class of the same name, for benchmarks only.
+ */
+public final class MediaDescriptionCompat {
+
+    private final String mMediaId;
+    private final CharSequence mTitle;
+    private final CharSequence mSubtitle;
+    private final CharSequence mDescription;
+    private final Bitmap mIcon;
+    private final Uri mIconUri;
+    private final Uri mMediaUri;
+    private final Bundle mExtras;
+
+    private MediaDescriptionCompat(Builder builder) {
+        mMediaId = builder.mMediaId;
+        mTitle = builder.mTitle;
+        mSubtitle = builder.mSubtitle;
+        mDescription = builder.mDescription;
+        mIcon = builder.mIcon;
+        mIconUri = builder.mIconUri;
+        mMediaUri = builder.mMediaUri;
+        mExtras = builder.mExtras;
+    }
+
+    public String getMediaId() {
+        return mMediaId;
+    }
+
+    public CharSequence getTitle() {
+        return mTitle;
+    }
+
+    public CharSequence getSubtitle() {
+        return mSubtitle;
+    }
+
+    public CharSequence getDescription() {
+        return mDescription;
+    }
+
+    public Bitmap getIconBitmap() {
+        return mIcon;
+    }
+
+    public Uri getIconUri() {
+        return mIconUri;
+    }
+
+    public Uri getMediaUri() {
+        return mMediaUri;
+    }
+
+    public Bundle getExtras() {
+        return mExtras;
+    }
+
+    public static final class Builder {
+        private String mMediaId;
+        private CharSequence mTitle;
+        private CharSequence mSubtitle;
+        private CharSequence mDescription;
+        private Bitmap mIcon;
+        private Uri mIconUri;
+        private Uri mMediaUri;
+        private Bundle mExtras;
+
+        public Builder setMediaId(String mediaId) {
+            mMediaId = mediaId;
+            return this;
+        }
+
+        public Builder setTitle(CharSequence title) {
+            mTitle = title;
+            return this;
+        }
+
+        public Builder setSubtitle(CharSequence subtitle) {
+            mSubtitle = subtitle;
+            return this;
+        }
+
+        public Builder setDescription(CharSequence description) {
+            mDescription = description;
+            return this;
+        }
+
+        public Builder setIconBitmap(Bitmap icon) {
+            mIcon = icon;
+            return this;
+        }
+
+        public Builder setIconUri(Uri iconUri) {
+            mIconUri = iconUri;
+            return this;
+        }
+
+        public Builder setMediaUri(Uri mediaUri) {
+            mMediaUri = mediaUri;
+            return this;
+        }
+
+        public Builder setExtras(Bundle extras) {
+            mExtras = extras;
+            return this;
+        }
+
+        public MediaDescriptionCompat build() {
+            return new MediaDescriptionCompat(this);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.media;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the Android class of the same name, for benchmarks only. Like the real one,
+ * it keeps its values in a map that is copied by {@link Builder#Builder(MediaMetadataCompat)},
+ * and builds its description on first use.
+ */
+public final class MediaMetadataCompat {
+
+    public static final String METADATA_KEY_TITLE = "android.media.metadata.TITLE";
+    public static final String METADATA_KEY_ARTIST = "android.media.metadata.ARTIST";
+    public static final String METADATA_KEY_DURATION = "android.media.metadata.DURATION";
+    public static final String METADATA_KEY_ALBUM = "android.media.metadata.ALBUM";
+    public static final String METADATA_KEY_GENRE = "android.media.metadata.GENRE";
+    public static final String METADATA_KEY_TRACK_NUMBER = "android.media.metadata.TRACK_NUMBER";
+    public static final String METADATA_KEY_NUM_TRACKS = "android.media.metadata.NUM_TRACKS";
+    public static final String METADATA_KEY_ALBUM_ART = "android.media.metadata.ALBUM_ART";
+    public static final String METADATA_KEY_ALBUM_ART_URI =
+            "android.media.metadata.ALBUM_ART_URI";
+    public static final String METADATA_KEY_DISPLAY_ICON = "android.media.metadata.DISPLAY_ICON";
+    public static final String METADATA_KEY_MEDIA_ID = "android.media.metadata.MEDIA_ID";
+    public static final String METADATA_KEY_MEDIA_URI = "android.media.metadata.MEDIA_URI";
+
+    private final Map<String, Object> mValues;
+    private MediaDescriptionCompat mDescription;
+
+    private MediaMetadataCompat(Map<String, Object> values) {
+        mValues = values;
+    }
+
+    public boolean containsKey(String key) {
+        return mValues.containsKey(key);
+    }
+
+    public String getString(String key) {
+        Object value = mValues.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    public CharSequence getText(String key) {
+        return (CharSequence) mValues.get(key);
+    }
+
+    public long getLong(String key) {
+        Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : 0;
+    }
+
+    public Bitmap getBitmap(String key) {
+        return (Bitmap) mValues.get(key);
+    }
+
+    public MediaDescriptionCompat getDescription() {
+        if (mDescription == null) {
+            String iconUri = getString(METADATA_KEY_ALBUM_ART_URI);
+            String mediaUri = getString(METADATA_KEY_MEDIA_URI);
+            mDescription = new MediaDescriptionCompat.Builder()
+                    .setMediaId(getString(METADATA_KEY_MEDIA_ID))
+                    .setTitle(getText(METADATA_KEY_TITLE))
+                    .setSubtitle(getText(METADATA_KEY_ARTIST))
+                    .setDescription(getText(METADATA_KEY_ALBUM))
+                    .setIconBitmap(getBitmap(METADATA_KEY_DISPLAY_ICON))
+                    .setIconUri(iconUri == null ? null : Uri.parse(iconUri))
+                    .setMediaUri(mediaUri == null ? null : Uri.parse(mediaUri))
+                    .build();
+        }
+        return mDescription;
+    }
+
+    public static final class Builder {
+        private final Map<String, Object> mValues;
+
+        public Builder() {
+            mValues = new HashMap<>();
+        }
+
+        public Builder(MediaMetadataCompat source) {
+            mValues = new HashMap<>(source.mValues);
+        }
+
+        public Builder putString(String key, String value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public Builder putText(String key, CharSequence value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public Builder putLong(String key, long value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public Builder putBitmap(String key, Bitmap value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public MediaMetadataCompat build() {
+            return new MediaMetadataCompat(mValues);
+        }
+    }
+}
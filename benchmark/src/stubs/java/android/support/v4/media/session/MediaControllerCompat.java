@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.media.session;
+
+import android.app.Activity;
+import android.support.v4.media.MediaMetadataCompat;
+
+/**
+ * JVM stand-in for the Android class of the same name, for benchmarks only. There is never a
+ * controller.
+ */
+public final class MediaControllerCompat {
+
+    public static MediaControllerCompat getMediaController(Activity activity) {
+        return null;
+    }
+
+    public MediaMetadataCompat getMetadata() {
+        return null;
+    }
+
+    public PlaybackStateCompat getPlaybackState() {
+        return null;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp;
+
+/**
+ * Stand-in for the generated class of the app, for benchmarks only. Benchmarks measure release
+ * builds.
+ */
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+    public static final String CATALOG_URL =
+            "http://storage.googleapis.com/automotive-media/music.json";
+}
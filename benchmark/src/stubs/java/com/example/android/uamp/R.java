@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp;
+
+/**
+ * Stand-in for the generated class of the app, with the resources used by the benchmarked code.
+ */
+public final class R {
+
+    public static final class string {
+        public static final int browse_genres = 0x7f0f0001;
+        public static final int browse_genre_subtitle = 0x7f0f0002;
+        public static final int browse_musics_by_genre_subtitle = 0x7f0f0003;
+        public static final int browse_favorites = 0x7f0f0004;
+        public static final int browse_favorites_subtitle = 0x7f0f0005;
+    }
+}
@@ -13,3 +13,15 @@
 #-keepclassmembers class fqcn.of.javascript.interface.for.webview {
 #   public *;
 #}
+
+# Only referenced by name, from the cast meta-data of the manifest.
+-keep class com.example.android.uamp.CastOptionsProvider { <init>(); }
+
+# Provided by the watch at runtime (compileOnly), see build.gradle.
+-dontwarn com.google.android.wearable.**
+
+# Remove verbose and debug logging from the release build, with the building of its arguments.
+-assumenosideeffects class com.example.android.uamp.utils.LogHelper {
+    public static void v(...);
+    public static void d(...);
+}
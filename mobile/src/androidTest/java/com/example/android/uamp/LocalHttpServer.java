@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small HTTP server on the loopback interface that stands in for the catalog, art and media
+ * servers in tests, so the code that fetches them can be tested and measured without a network.
+ *
+ * Responses are registered by path. A path ending with "/" serves everything below it, so the
+ * many media files of a large catalog can share one body. The latency before each response, the
+ * bandwidth and a rate of failed requests can be set to test slow and unreliable servers. Failed
+ * requests are picked with a fixed seed, so a test sees the same failures every time.
+ *
+ * GET and HEAD are supported, as well as byte ranges, which ExoPlayer uses to resume.
+ */
+public class LocalHttpServer implements Closeable {
+
+    public static final String CATALOG_PATH = "music.json";
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int TRACKS_PER_ALBUM = 12;
+
+    public enum Failure {
+        // Answers with 503 Service Unavailable.
+        ERROR_STATUS,
+        // Sends the headers and half of the body, then closes the connection.
+        DISCONNECT
+    }
+
+    private static class Response {
+        final String contentType;
+        final byte[] body;
+
+        Response(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    private final Map<String, Response> mResponses = new ConcurrentHashMap<>();
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final ServerSocket mServerSocket;
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private volatile long mLatencyMs;
+    private volatile long mBytesPerSecond;
+    private volatile Failure mFailure;
+    private volatile double mFailureRate;
+    private final Random mFailureRandom = new Random(0);
+
+    public LocalHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    /**
+     * @return the URL of the given path, which must not start with "/".
+     */
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" + path;
+    }
+
+    /**
+     * Serves the given body at the given path, or below it if the path ends with "/".
+     */
+    public void setResponse(String path, String contentType, byte[] body) {
+        mResponses.put("/" + path, new Response(contentType, body));
+    }
+
+    /**
+     * Serves a catalog of the given number of tracks at {@link #CATALOG_PATH}, in the format of
+     * the real one, with a PNG image for each album and a WAV file of the given length for each
+     * track. Media and art URLs are relative, so they are served here too.
+     */
+    public void serveCatalog(int trackCount, int audioDurationMs) throws JSONException {
+        setResponse(CATALOG_PATH, "application/json",
+                createCatalog(trackCount, audioDurationMs / 1000).getBytes(ASCII));
+        setResponse("art/", "image/png", createPng(480, 480));
+        setResponse("audio/", "audio/wav", createWav(audioDurationMs));
+    }
+
+    /**
+     * Waits the given time before answering each request.
+     */
+    public void setLatency(long latencyMs) {
+        mLatencyMs = latencyMs;
+    }
+
+    /**
+     * Limits how fast the body of each response is sent, 0 for no limit.
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Fails the given ratio of requests, between 0 and 1, the given way.
+     */
+    public void setFailure(Failure failure, double rate) {
+        mFailure = failure;
+        mFailureRate = rate;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return the number of body bytes sent so far.
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // Closed.
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), ASCII));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            long rangeStart = -1;
+            long rangeEnd = -1;
+            String header;
+            while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                if (header.toLowerCase(Locale.US).startsWith("range: bytes=")) {
+                    String[] range = header.substring("range: bytes=".length()).split("-", 2);
+                    rangeStart = Long.parseLong(range[0].trim());
+                    if (range.length > 1 && !range[1].trim().isEmpty()) {
+                        rangeEnd = Long.parseLong(range[1].trim());
+                    }
+                }
+            }
+            mRequestCount.incrementAndGet();
+            if (mLatencyMs > 0) {
+                Thread.sleep(mLatencyMs);
+            }
+
+            String[] parts = requestLine.split(" ");
+            String method = parts[0];
+            Response response = parts.length > 1 ? findResponse(parts[1]) : null;
+            OutputStream out = socket.getOutputStream();
+            Failure failure = pickFailure();
+            if (failure == Failure.ERROR_STATUS) {
+                writeHeaders(out, "503 Service Unavailable", "text/plain", 0, null);
+                return;
+            }
+            if (response == null) {
+                writeHeaders(out, "404 Not Found", "text/plain", 0, null);
+                return;
+            }
+
+            int length = response.body.length;
+            int start = 0;
+            int end = length - 1;
+            String status = "200 OK";
+            String contentRange = null;
+            if (rangeStart >= 0) {
+                if (rangeStart >= length) {
+                    writeHeaders(out, "416 Range Not Satisfiable", "text/plain", 0,
+                            "bytes */" + length);
+                    return;
+                }
+                start = (int) rangeStart;
+                end = rangeEnd >= 0 ? (int) Math.min(rangeEnd, length - 1) : length - 1;
+                status = "206 Partial Content";
+                contentRange = "bytes " + start + "-" + end + "/" + length;
+            }
+            int count = end - start + 1;
+            writeHeaders(out, status, response.contentType, count, contentRange);
+            if (!"HEAD".equals(method)) {
+                if (failure == Failure.DISCONNECT) {
+                    count /= 2;
+                }
+                writeBody(out, response.body, start, count);
+            }
+        } catch (InterruptedException | IOException e) {
+            // The client went away or the server is closing.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private Response findResponse(String path) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        Response response = mResponses.get(path);
+        int slash = path.lastIndexOf('/');
+        while (response == null && slash >= 0) {
+            response = mResponses.get(path.substring(0, slash + 1));
+            slash = path.lastIndexOf('/', slash - 1);
+        }
+        return response;
+    }
+
+    private Failure pickFailure() {
+        if (mFailure == null || mFailureRate <= 0) {
+            return null;
+        }
+        synchronized (mFailureRandom) {
+            return mFailureRandom.nextDouble() < mFailureRate ? mFailure : null;
+        }
+    }
+
+    private static void writeHeaders(OutputStream out, String status, String contentType,
+            int contentLength, String contentRange) throws IOException {
+        StringBuilder sb = new StringBuilder()
+                .append("HTTP/1.1 ").append(status).append("\r\n")
+                .append("Content-Type: ").append(contentType).append("\r\n")
+                .append("Content-Length: ").append(contentLength).append("\r\n")
+                .append("Accept-Ranges: bytes\r\n")
+                .append("Connection: close\r\n");
+        if (contentRange != null) {
+            sb.append("Content-Range: ").append(contentRange).append("\r\n");
+        }
+        out.write(sb.append("\r\n").toString().getBytes(ASCII));
+        out.flush();
+    }
+
+    // Sends the body in chunks, sleeping between them to keep to the bandwidth.
+    private void writeBody(OutputStream out, byte[] body, int offset, int count)
+            throws IOException, InterruptedException {
+        long startMs = System.currentTimeMillis();
+        int sent = 0;
+        while (sent < count) {
+            int chunk = Math.min(CHUNK_SIZE, count - sent);
+            try {
+                out.write(body, offset + sent, chunk);
+            } catch (SocketException e) {
+                return;
+            }
+            sent += chunk;
+            mBytesSent.addAndGet(chunk);
+            long bytesPerSecond = mBytesPerSecond;
+            if (bytesPerSecond > 0) {
+                long dueMs = startMs + sent * 1000L / bytesPerSecond;
+                long waitMs = dueMs - System.currentTimeMillis();
+                if (waitMs > 0) {
+                    Thread.sleep(waitMs);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @return a catalog in the format of the real one, with relative media and art URLs.
+     */
+    public static String createCatalog(int trackCount, int durationSeconds)
+            throws JSONException {
+        JSONArray music = new JSONArray();
+        for (int i = 0; i < trackCount; i++) {
+            int album = i / TRACKS_PER_ALBUM;
+            music.put(new JSONObject()
+                    .put("title", "Track " + i)
+                    .put("album", "Album " + album)
+                    .put("artist", "Artist " + album % 50)
+                    .put("genre", "Genre " + album % 10)
+                    .put("source", "audio/track_" + i + ".wav")
+                    .put("image", "art/album_" + album + ".png")
+                    .put("trackNumber", i % TRACKS_PER_ALBUM + 1)
+                    .put("totalTrackCount", TRACKS_PER_ALBUM)
+                    .put("duration", durationSeconds));
+        }
+        return new JSONObject().put("music", music).toString();
+    }
+
+    /**
+     * @return a PNG image of the given size, with a gradient so it doesn't compress to nothing.
+     */
+    public static byte[] createPng(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] =
+                        Color.rgb(x * 255 / width, y * 255 / height, (x ^ y) & 0xff);
+            }
+        }
+        Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return a WAV file with the given duration of 16 bit mono silence at 44.1kHz.
+     */
+    public static byte[] createWav(int durationMs) {
+        int sampleRate = 44100;
+        int dataSize = (int) ((long) sampleRate * durationMs / 1000) * 2;
+        byte[] wav = new byte[44 + dataSize];
+        writeAscii(wav, 0, "RIFF");
+        writeInt(wav, 4, 36 + dataSize);
+        writeAscii(wav, 8, "WAVEfmt ");
+        writeInt(wav, 16, 16);
+        // PCM, mono.
+        writeShort(wav, 20, 1);
+        writeShort(wav, 22, 1);
+        writeInt(wav, 24, sampleRate);
+        writeInt(wav, 28, sampleRate * 2);
+        writeShort(wav, 32, 2);
+        writeShort(wav, 34, 16);
+        writeAscii(wav, 36, "data");
+        writeInt(wav, 40, dataSize);
+        return wav;
+    }
+
+    private static void writeAscii(byte[] buffer, int offset, String value) {
+        byte[] bytes = value.getBytes(ASCII);
+        System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        writeShort(buffer, offset, value);
+        writeShort(buffer, offset + 2, value >> 16);
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+}
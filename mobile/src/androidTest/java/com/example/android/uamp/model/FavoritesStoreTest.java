@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.model;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Android instrumentation tests for {@link FavoritesStore}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FavoritesStoreTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("favorites", ".log");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void deleteFile() throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void testChangesSurviveReload() throws Exception {
+        FavoritesStore store = new FavoritesStore(file);
+        store.setFavorite("1", true);
+        store.setFavorite("2", true);
+        store.setFavorite("3", true);
+        store.setFavorite("2", false);
+        assertEquals(new HashSet<>(Arrays.asList("1", "3")), store.load());
+
+        // A new store only sees what was written.
+        assertEquals(new HashSet<>(Arrays.asList("1", "3")), new FavoritesStore(file).load());
+    }
+
+    @Test
+    public void testLogIsCompacted() throws Exception {
+        FavoritesStore store = new FavoritesStore(file);
+        for (int i = 0; i < 1000; i++) {
+            store.setFavorite("track", i % 2 == 0);
+            // Writes each change on its own, as toggling slowly would.
+            store.load();
+        }
+        store.setFavorite("kept", true);
+        store.load();
+
+        assertEquals(new HashSet<>(Arrays.asList("kept")), new FavoritesStore(file).load());
+        // Without compaction, the log would have a line per change.
+        assertTrue("Log of " + file.length() + " bytes", file.length() < 1000 * 7);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.model;
+
+import android.graphics.Bitmap;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.media.MediaMetadataCompat;
+
+import com.example.android.uamp.LocalHttpServer;
+import com.example.android.uamp.utils.BitmapHelper;
+import com.example.android.uamp.utils.LogHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Android instrumentation tests for {@link RemoteJSONSource} and {@link BitmapHelper}, against
+ * a {@link LocalHttpServer}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RemoteJSONSourceTest {
+
+    private static final String TAG = LogHelper.makeLogTag(RemoteJSONSourceTest.class);
+
+    private LocalHttpServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new LocalHttpServer();
+        server.serveCatalog(100, 5000);
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void testReadsCatalog() throws Exception {
+        RemoteJSONSource source =
+                new RemoteJSONSource(server.getUrl(LocalHttpServer.CATALOG_PATH));
+        int count = 0;
+        Iterator<MediaMetadataCompat> tracks = source.iterator();
+        while (tracks.hasNext()) {
+            MediaMetadataCompat track = tracks.next();
+            // Relative URLs are resolved against the catalog.
+            assertTrue(track.getString(MusicProviderSource.CUSTOM_METADATA_TRACK_SOURCE)
+                    .startsWith(server.getUrl("audio/")));
+            assertTrue(track.getString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI)
+                    .startsWith(server.getUrl("art/")));
+            assertEquals(5000, track.getLong(MediaMetadataCompat.METADATA_KEY_DURATION));
+            count++;
+        }
+        assertEquals(100, count);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testServerErrorGivesNoTracks() throws Exception {
+        server.setFailure(LocalHttpServer.Failure.ERROR_STATUS, 1);
+        RemoteJSONSource source =
+                new RemoteJSONSource(server.getUrl(LocalHttpServer.CATALOG_PATH));
+        assertFalse(source.iterator().hasNext());
+    }
+
+    @Test
+    public void testFetchesArtWithLatencyAndBandwidth() throws Exception {
+        server.setLatency(200);
+        server.setBandwidth(100 * 1024);
+        long start = System.currentTimeMillis();
+        Bitmap bitmap = BitmapHelper.fetchAndRescaleBitmap(server.getUrl("art/album_0.png"),
+                128, 128);
+        long elapsedMs = System.currentTimeMillis() - start;
+
+        assertNotNull(bitmap);
+        // Scaled down from 480x480.
+        assertTrue(bitmap.getWidth() < 480);
+        long minimumMs = 200 + server.getBytesSent() * 1000 / (100 * 1024);
+        assertTrue("Took " + elapsedMs + "ms", elapsedMs >= minimumMs - 50);
+        LogHelper.i(TAG, "Fetched ", server.getBytesSent(), " bytes of art in ", elapsedMs, "ms");
+    }
+}
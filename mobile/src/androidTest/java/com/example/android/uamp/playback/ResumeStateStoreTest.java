@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.media.MediaMetadataCompat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Android instrumentation tests for {@link ResumeStateStore}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResumeStateStoreTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("resume", ".state");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void deleteFile() throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void testLastSavedStateIsRead() throws Exception {
+        MediaMetadataCompat track = new MediaMetadataCompat.Builder()
+                .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, "2")
+                .putString(MediaMetadataCompat.METADATA_KEY_TITLE, "Track 2")
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, 180000)
+                .build();
+        ResumeStateStore store = new ResumeStateStore(file);
+        store.save(new ResumeStateStore.ResumeState("Old", new String[] {"genre"},
+                Arrays.asList("1"), 0, 1000, null));
+        store.save(new ResumeStateStore.ResumeState("Queue", new String[] {"genre", "Rock"},
+                Arrays.asList("1", "2", "3"), 1, 42000, track));
+        store.close();
+        assertTrue(store.awaitClosed(5, TimeUnit.SECONDS));
+
+        ResumeStateStore.ResumeState state = read();
+        assertEquals("Queue", state.title);
+        assertArrayEquals(new String[] {"genre", "Rock"}, state.categories);
+        assertEquals(Arrays.asList("1", "2", "3"), state.musicIds);
+        assertEquals(1, state.index);
+        assertEquals(42000, state.positionMs);
+        assertEquals("Track 2",
+                state.currentTrack.getString(MediaMetadataCompat.METADATA_KEY_TITLE));
+        assertEquals(180000,
+                state.currentTrack.getLong(MediaMetadataCompat.METADATA_KEY_DURATION));
+    }
+
+    @Test
+    public void testNothingSaved() throws Exception {
+        assertNull(read());
+    }
+
+    private ResumeStateStore.ResumeState read() throws Exception {
+        final ResumeStateStore.ResumeState[] result = new ResumeStateStore.ResumeState[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+        ResumeStateStore store = new ResumeStateStore(file);
+        store.read(new ResumeStateStore.Callback() {
+            @Override
+            public void onStateRead(ResumeStateStore.ResumeState state) {
+                result[0] = state;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        store.close();
+        return result[0];
+    }
+}
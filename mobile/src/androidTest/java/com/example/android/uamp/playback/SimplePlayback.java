@@ -73,6 +73,11 @@ class SimplePlayback implements Playback {
 
     }
 
+    @Override
+    public void setNextQueueItem(MediaSessionCompat.QueueItem item) {
+
+    }
+
     @Override
     public void setCurrentMediaId(String mediaId) {
 
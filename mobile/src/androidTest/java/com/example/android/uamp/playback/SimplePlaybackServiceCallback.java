@@ -37,4 +37,9 @@ class SimplePlaybackServiceCallback implements PlaybackManager.PlaybackServiceCa
     public void onPlaybackStateUpdated(PlaybackStateCompat newState) {
 
     }
+
+    @Override
+    public void onFavoritesChanged() {
+
+    }
 }
@@ -23,6 +23,7 @@ import android.util.LruCache;
 
 import com.example.android.uamp.utils.BitmapHelper;
 import com.example.android.uamp.utils.LogHelper;
+import com.example.android.uamp.utils.PerfMetrics;
 
 import java.io.IOException;
 
@@ -88,6 +89,7 @@ public final class AlbumArtCache {
         Bitmap[] bitmap = mCache.get(artUrl);
         if (bitmap != null) {
             LogHelper.d(TAG, "getOrFetch: album art is in cache, using it", artUrl);
+            PerfMetrics.increment(PerfMetrics.COUNTER_ART_CACHE_HIT);
             listener.onFetched(artUrl, bitmap[BIG_BITMAP_INDEX], bitmap[ICON_BITMAP_INDEX]);
             return;
         }
@@ -97,6 +99,7 @@ public final class AlbumArtCache {
             @Override
             protected Bitmap[] doInBackground(Void[] objects) {
                 Bitmap[] bitmaps;
+                long start = PerfMetrics.now();
                 try {
                     Bitmap bitmap = BitmapHelper.fetchAndRescaleBitmap(artUrl,
                         MAX_ART_WIDTH, MAX_ART_HEIGHT);
@@ -105,8 +108,10 @@ public final class AlbumArtCache {
                     bitmaps = new Bitmap[] {bitmap, icon};
                     mCache.put(artUrl, bitmaps);
                 } catch (IOException e) {
+                    PerfMetrics.increment(PerfMetrics.COUNTER_ART_FETCH_FAILED);
                     return null;
                 }
+                PerfMetrics.endSpan(PerfMetrics.SPAN_ART_FETCH, start);
                 LogHelper.d(TAG, "doInBackground: putting bitmap in cache. cache size=" +
                     mCache.size());
                 return bitmaps;
@@ -28,7 +28,9 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.os.Build;
+import android.os.Handler;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.RequiresApi;
 import android.support.v4.app.NotificationCompat;
@@ -38,15 +40,21 @@ import android.support.v4.media.app.NotificationCompat.MediaStyle;
 import android.support.v4.media.session.MediaControllerCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.TextUtils;
 
 import com.example.android.uamp.ui.MusicPlayerActivity;
 import com.example.android.uamp.utils.LogHelper;
+import com.example.android.uamp.utils.PerfMetrics;
 import com.example.android.uamp.utils.ResourceHelper;
 
 /**
  * Keeps track of a notification and updates it automatically for a given
  * MediaSession. Maintaining a visible notification (usually) guarantees that the music service
  * won't be killed during playback.
+ *
+ * Updates are rate limited, and the notification is only re-posted when what it shows changed,
+ * since each post makes the system UI inflate and render it again. The notification builder is
+ * kept while the buttons stay the same, and only the content is set again on it.
  */
 public class MediaNotificationManager extends BroadcastReceiver {
     private static final String TAG = LogHelper.makeLogTag(MediaNotificationManager.class);
@@ -56,6 +64,10 @@ public class MediaNotificationManager extends BroadcastReceiver {
     private static final int NOTIFICATION_ID = 412;
     private static final int REQUEST_CODE = 100;
 
+    // Minimum time between two posts of the notification.
+    private static final long MIN_NOTIFY_INTERVAL_MS = 250;
+    private static final long NOTIFY_STATS_INTERVAL_MS = 60 * 1000;
+
     public static final String ACTION_PAUSE = "com.example.android.uamp.pause";
     public static final String ACTION_PLAY = "com.example.android.uamp.play";
     public static final String ACTION_PREV = "com.example.android.uamp.prev";
@@ -81,6 +93,29 @@ public class MediaNotificationManager extends BroadcastReceiver {
 
     private final PendingIntent mStopCastIntent;
 
+    private final NotificationCompat.Action mPreviousAction;
+    private final NotificationCompat.Action mPlayAction;
+    private final NotificationCompat.Action mPauseAction;
+    private final NotificationCompat.Action mNextAction;
+    private final NotificationCompat.Action mStopCastAction;
+    private Bitmap mPlaceholderArt;
+    private PendingIntent mContentIntent;
+    private String mContentIntentMediaId;
+    // Reused while the notification shows the same buttons, see getNotificationButtons.
+    private NotificationCompat.Builder mNotificationBuilder;
+    private int mNotificationButtons;
+
+    private final Handler mHandler = new Handler();
+    private boolean mUpdatePending;
+    private long mLastNotifyTime;
+    // Describes what the last posted notification shows, see getVisibleContentKey.
+    private String mLastNotifiedKey;
+
+    // Notifications posted and skipped in the current minute.
+    private long mNotifyStatsStartTime;
+    private int mNotifyCount;
+    private int mSkippedNotifyCount;
+
     private final int mNotificationColor;
 
     private boolean mStarted = false;
@@ -109,6 +144,17 @@ public class MediaNotificationManager extends BroadcastReceiver {
                 new Intent(ACTION_STOP_CASTING).setPackage(pkg),
                 PendingIntent.FLAG_CANCEL_CURRENT);
 
+        mPreviousAction = new NotificationCompat.Action(R.drawable.ic_skip_previous_white_24dp,
+                mService.getString(R.string.label_previous), mPreviousIntent);
+        mPlayAction = new NotificationCompat.Action(R.drawable.uamp_ic_play_arrow_white_24dp,
+                mService.getString(R.string.label_play), mPlayIntent);
+        mPauseAction = new NotificationCompat.Action(R.drawable.uamp_ic_pause_white_24dp,
+                mService.getString(R.string.label_pause), mPauseIntent);
+        mNextAction = new NotificationCompat.Action(R.drawable.ic_skip_next_white_24dp,
+                mService.getString(R.string.label_next), mNextIntent);
+        mStopCastAction = new NotificationCompat.Action(R.drawable.ic_close_black_24dp,
+                mService.getString(R.string.stop_casting), mStopCastIntent);
+
         // Cancel all notifications to handle the case where the Service was killed and
         // restarted by the system.
         mNotificationManager.cancelAll();
@@ -140,6 +186,8 @@ public class MediaNotificationManager extends BroadcastReceiver {
 
                 mService.startForeground(NOTIFICATION_ID, notification);
                 mStarted = true;
+                mLastNotifiedKey = getVisibleContentKey();
+                mLastNotifyTime = SystemClock.elapsedRealtime();
             }
         }
     }
@@ -152,6 +200,9 @@ public class MediaNotificationManager extends BroadcastReceiver {
     public void stopNotification() {
         if (mStarted) {
             mStarted = false;
+            mHandler.removeCallbacks(mUpdateRunnable);
+            mUpdatePending = false;
+            mLastNotifiedKey = null;
             mController.unregisterCallback(mCb);
             try {
                 mNotificationManager.cancel(NOTIFICATION_ID);
@@ -204,6 +255,8 @@ public class MediaNotificationManager extends BroadcastReceiver {
                 mController.unregisterCallback(mCb);
             }
             mSessionToken = freshToken;
+            // The media style of the builder refers to the session.
+            mNotificationBuilder = null;
             if (mSessionToken != null) {
                 mController = new MediaControllerCompat(mService, mSessionToken);
                 mTransportControls = mController.getTransportControls();
@@ -214,6 +267,16 @@ public class MediaNotificationManager extends BroadcastReceiver {
         }
     }
 
+    private PendingIntent getContentIntent(MediaDescriptionCompat description) {
+        // The intent only depends on the description, so it's reused while the media is the same.
+        String mediaId = description == null ? null : description.getMediaId();
+        if (mContentIntent == null || !TextUtils.equals(mediaId, mContentIntentMediaId)) {
+            mContentIntent = createContentIntent(description);
+            mContentIntentMediaId = mediaId;
+        }
+        return mContentIntent;
+    }
+
     private PendingIntent createContentIntent(MediaDescriptionCompat description) {
         Intent openUI = new Intent(mService, MusicPlayerActivity.class);
         openUI.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
@@ -234,10 +297,7 @@ public class MediaNotificationManager extends BroadcastReceiver {
                     state.getState() == PlaybackStateCompat.STATE_NONE) {
                 stopNotification();
             } else {
-                Notification notification = createNotification();
-                if (notification != null) {
-                    mNotificationManager.notify(NOTIFICATION_ID, notification);
-                }
+                updateNotification();
             }
         }
 
@@ -245,10 +305,7 @@ public class MediaNotificationManager extends BroadcastReceiver {
         public void onMetadataChanged(MediaMetadataCompat metadata) {
             mMetadata = metadata;
             LogHelper.d(TAG, "Received new metadata ", metadata);
-            Notification notification = createNotification();
-            if (notification != null) {
-                mNotificationManager.notify(NOTIFICATION_ID, notification);
-            }
+            updateNotification();
         }
 
         @Override
@@ -263,6 +320,81 @@ public class MediaNotificationManager extends BroadcastReceiver {
         }
     };
 
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mUpdatePending = false;
+            updateNotification();
+        }
+    };
+
+    /**
+     * Posts the notification again if what it shows changed, at most once every
+     * MIN_NOTIFY_INTERVAL_MS. Updates within the interval are folded into one, made with the
+     * latest state when the interval ends.
+     */
+    private void updateNotification() {
+        if (!mStarted || mUpdatePending) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - mNotifyStatsStartTime >= NOTIFY_STATS_INTERVAL_MS) {
+            LogHelper.i(TAG, "Notifications posted in the last minute: ", mNotifyCount,
+                    ", skipped as unchanged: ", mSkippedNotifyCount);
+            mNotifyStatsStartTime = now;
+            mNotifyCount = 0;
+            mSkippedNotifyCount = 0;
+        }
+        long wait = mLastNotifyTime + MIN_NOTIFY_INTERVAL_MS - now;
+        if (wait > 0) {
+            mUpdatePending = true;
+            mHandler.postDelayed(mUpdateRunnable, wait);
+            return;
+        }
+
+        String key = getVisibleContentKey();
+        if (key == null) {
+            return;
+        }
+        if (key.equals(mLastNotifiedKey)) {
+            mSkippedNotifyCount++;
+            PerfMetrics.increment(PerfMetrics.COUNTER_NOTIFICATION_SKIPPED);
+            return;
+        }
+        Notification notification = createNotification();
+        if (notification != null) {
+            mNotificationManager.notify(NOTIFICATION_ID, notification);
+            mLastNotifiedKey = key;
+            mLastNotifyTime = now;
+            mNotifyCount++;
+            PerfMetrics.increment(PerfMetrics.COUNTER_NOTIFICATION_POSTED);
+        }
+    }
+
+    /**
+     * @return a string that changes whenever the content of the notification would, or null if
+     * there is nothing to show.
+     */
+    private String getVisibleContentKey() {
+        if (mMetadata == null || mPlaybackState == null) {
+            return null;
+        }
+        MediaDescriptionCompat description = mMetadata.getDescription();
+        String artUrl = description.getIconUri() == null
+                ? null : description.getIconUri().toString();
+        boolean artLoaded = artUrl != null
+                && AlbumArtCache.getInstance().getBigImage(artUrl) != null;
+        String castName = mController != null && mController.getExtras() != null
+                ? mController.getExtras().getString(MusicService.EXTRA_CONNECTED_CAST) : null;
+        long visibleActions = mPlaybackState.getActions()
+                & (PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS
+                | PlaybackStateCompat.ACTION_SKIP_TO_NEXT);
+        return description.getMediaId() + '|' + description.getTitle() + '|'
+                + description.getSubtitle() + '|' + artUrl + '|' + artLoaded + '|'
+                + (mPlaybackState.getState() == PlaybackStateCompat.STATE_PLAYING) + '|'
+                + visibleActions + '|' + castName;
+    }
+
     private Notification createNotification() {
         LogHelper.d(TAG, "updateNotificationMetadata. mMetadata=" + mMetadata);
         if (mMetadata == null || mPlaybackState == null) {
@@ -282,11 +414,56 @@ public class MediaNotificationManager extends BroadcastReceiver {
             if (art == null) {
                 fetchArtUrl = artUrl;
                 // use a placeholder art while the remote art is being downloaded
-                art = BitmapFactory.decodeResource(mService.getResources(),
-                        R.drawable.ic_default_art);
+                if (mPlaceholderArt == null) {
+                    mPlaceholderArt = BitmapFactory.decodeResource(mService.getResources(),
+                            R.drawable.ic_default_art);
+                }
+                art = mPlaceholderArt;
             }
         }
 
+        String castName = null;
+        if (mController != null && mController.getExtras() != null) {
+            castName = mController.getExtras().getString(MusicService.EXTRA_CONNECTED_CAST);
+        }
+
+        int buttons = getNotificationButtons(castName != null);
+        if (mNotificationBuilder == null || buttons != mNotificationButtons) {
+            mNotificationBuilder = createNotificationBuilder(castName != null);
+            mNotificationButtons = buttons;
+        }
+        final NotificationCompat.Builder notificationBuilder = mNotificationBuilder;
+        notificationBuilder
+                .setContentIntent(getContentIntent(description))
+                .setContentTitle(description.getTitle())
+                .setContentText(description.getSubtitle())
+                .setLargeIcon(art)
+                .setSubText(castName == null ? null : mService.getResources()
+                        .getString(R.string.casting_to_device, castName));
+
+        setNotificationPlaybackState(notificationBuilder);
+        if (fetchArtUrl != null) {
+            fetchBitmapFromURLAsync(fetchArtUrl);
+        }
+
+        return notificationBuilder.build();
+    }
+
+    /**
+     * @return the buttons the notification has for the current state, as a bit mask.
+     */
+    private int getNotificationButtons(boolean casting) {
+        return (int) (mPlaybackState.getActions() & (PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS
+                | PlaybackStateCompat.ACTION_SKIP_TO_NEXT))
+                | (mPlaybackState.getState() == PlaybackStateCompat.STATE_PLAYING ? 1 << 8 : 0)
+                | (casting ? 1 << 9 : 0);
+    }
+
+    /**
+     * Creates a builder with what only changes with the buttons. A builder can't remove
+     * actions, so a new one is needed when they change.
+     */
+    private NotificationCompat.Builder createNotificationBuilder(boolean casting) {
         // Notification channels are only supported on Android O+.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             createNotificationChannel();
@@ -307,29 +484,11 @@ public class MediaNotificationManager extends BroadcastReceiver {
                 .setColor(mNotificationColor)
                 .setSmallIcon(R.drawable.ic_notification)
                 .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .setOnlyAlertOnce(true)
-                .setContentIntent(createContentIntent(description))
-                .setContentTitle(description.getTitle())
-                .setContentText(description.getSubtitle())
-                .setLargeIcon(art);
-
-        if (mController != null && mController.getExtras() != null) {
-            String castName = mController.getExtras().getString(MusicService.EXTRA_CONNECTED_CAST);
-            if (castName != null) {
-                String castInfo = mService.getResources()
-                        .getString(R.string.casting_to_device, castName);
-                notificationBuilder.setSubText(castInfo);
-                notificationBuilder.addAction(R.drawable.ic_close_black_24dp,
-                        mService.getString(R.string.stop_casting), mStopCastIntent);
-            }
-        }
-
-        setNotificationPlaybackState(notificationBuilder);
-        if (fetchArtUrl != null) {
-            fetchBitmapFromURLAsync(fetchArtUrl, notificationBuilder);
+                .setOnlyAlertOnce(true);
+        if (casting) {
+            notificationBuilder.addAction(mStopCastAction);
         }
-
-        return notificationBuilder.build();
+        return notificationBuilder;
     }
 
     private int addActions(final NotificationCompat.Builder notificationBuilder) {
@@ -338,8 +497,7 @@ public class MediaNotificationManager extends BroadcastReceiver {
         int playPauseButtonPosition = 0;
         // If skip to previous action is enabled
         if ((mPlaybackState.getActions() & PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS) != 0) {
-            notificationBuilder.addAction(R.drawable.ic_skip_previous_white_24dp,
-                    mService.getString(R.string.label_previous), mPreviousIntent);
+            notificationBuilder.addAction(mPreviousAction);
 
             // If there is a "skip to previous" button, the play/pause button will
             // be the second one. We need to keep track of it, because the MediaStyle notification
@@ -349,24 +507,15 @@ public class MediaNotificationManager extends BroadcastReceiver {
         }
 
         // Play or pause button, depending on the current state.
-        final String label;
-        final int icon;
-        final PendingIntent intent;
         if (mPlaybackState.getState() == PlaybackStateCompat.STATE_PLAYING) {
-            label = mService.getString(R.string.label_pause);
-            icon = R.drawable.uamp_ic_pause_white_24dp;
-            intent = mPauseIntent;
+            notificationBuilder.addAction(mPauseAction);
         } else {
-            label = mService.getString(R.string.label_play);
-            icon = R.drawable.uamp_ic_play_arrow_white_24dp;
-            intent = mPlayIntent;
+            notificationBuilder.addAction(mPlayAction);
         }
-        notificationBuilder.addAction(new NotificationCompat.Action(icon, label, intent));
 
         // If skip to next action is enabled
         if ((mPlaybackState.getActions() & PlaybackStateCompat.ACTION_SKIP_TO_NEXT) != 0) {
-            notificationBuilder.addAction(R.drawable.ic_skip_next_white_24dp,
-                    mService.getString(R.string.label_next), mNextIntent);
+            notificationBuilder.addAction(mNextAction);
         }
 
         return playPauseButtonPosition;
@@ -384,18 +533,16 @@ public class MediaNotificationManager extends BroadcastReceiver {
         builder.setOngoing(mPlaybackState.getState() == PlaybackStateCompat.STATE_PLAYING);
     }
 
-    private void fetchBitmapFromURLAsync(final String bitmapUrl,
-                                         final NotificationCompat.Builder builder) {
+    private void fetchBitmapFromURLAsync(final String bitmapUrl) {
         AlbumArtCache.getInstance().fetch(bitmapUrl, new AlbumArtCache.FetchListener() {
             @Override
             public void onFetched(String artUrl, Bitmap bitmap, Bitmap icon) {
                 if (mMetadata != null && mMetadata.getDescription().getIconUri() != null &&
                         mMetadata.getDescription().getIconUri().toString().equals(artUrl)) {
-                    // If the media is still the same, update the notification:
+                    // If the media is still the same, update the notification. The art is in
+                    // the cache now, so it will be picked up from there.
                     LogHelper.d(TAG, "fetchBitmapFromURLAsync: set bitmap to ", artUrl);
-                    builder.setLargeIcon(bitmap);
-                    addActions(builder);
-                    mNotificationManager.notify(NOTIFICATION_ID, builder.build());
+                    updateNotification();
                 }
             }
         });
@@ -35,15 +35,24 @@
  import android.support.v7.media.MediaRouter;
  import android.util.Log;
 
+ import com.example.android.uamp.model.FavoritesStore;
  import com.example.android.uamp.model.MusicProvider;
+ import com.example.android.uamp.model.RemoteJSONSource;
+ import com.example.android.uamp.model.TrackDownloader;
  import com.example.android.uamp.playback.CastPlayback;
  import com.example.android.uamp.playback.LocalPlayback;
  import com.example.android.uamp.playback.Playback;
  import com.example.android.uamp.playback.PlaybackManager;
+ import com.example.android.uamp.playback.PlaybackPipeline;
  import com.example.android.uamp.playback.QueueManager;
+ import com.example.android.uamp.playback.ResumeStateStore;
+ import com.example.android.uamp.playback.SessionQueuePublisher;
  import com.example.android.uamp.ui.NowPlayingActivity;
  import com.example.android.uamp.utils.CarHelper;
  import com.example.android.uamp.utils.LogHelper;
+ import com.example.android.uamp.utils.MediaIDHelper;
+ import com.example.android.uamp.utils.PerfMetrics;
+ import com.example.android.uamp.utils.QueueHelper;
  import com.example.android.uamp.utils.TvHelper;
  import com.example.android.uamp.utils.WearHelper;
  import com.google.android.gms.cast.framework.CastContext;
@@ -53,11 +62,15 @@
  import com.google.android.gms.common.ConnectionResult;
  import com.google.android.gms.common.GoogleApiAvailability;
 
+ import java.io.File;
+ import java.io.FileDescriptor;
+ import java.io.PrintWriter;
  import java.lang.ref.WeakReference;
  import java.util.ArrayList;
  import java.util.List;
 
  import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_EMPTY_ROOT;
+ import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_FAVORITES;
  import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_ROOT;
 
  /**
@@ -146,9 +159,17 @@
      // to local playback from cast playback.
      //CMD NAME键的值，表示音乐播放应从播放播放切换到本地播放
      public static final String CMD_STOP_CASTING = "CMD_STOP_CASTING";
+     // A value of a CMD_NAME key that indicates that tracks should be downloaded for offline
+     // playback. The tracks are those of the browsable mediaId in EXTRA_MEDIA_ID if present,
+     // or those of the current queue otherwise.
+     public static final String CMD_DOWNLOAD = "CMD_DOWNLOAD";
+     // The key in the extras of the incoming Intent holding the mediaId a command applies to.
+     public static final String EXTRA_MEDIA_ID = "EXTRA_MEDIA_ID";
      // Delay stopSelf by using a handler.
      //使用handler延迟停止服务的时间
      private static final int STOP_DELAY = 30000;
+     // How often the position is saved while playing, to resume near it after a kill.
+     private static final long RESUME_STATE_SAVE_INTERVAL_MS = 5000;
 
      //音乐资源提供者
      private MusicProvider mMusicProvider;
@@ -158,6 +179,10 @@
      private PlaybackManager mPlaybackManager;
     /**媒体会话*/
      private MediaSessionCompat mSession;
+     private QueueManager mQueueManager;
+     private SessionQueuePublisher mQueuePublisher;
+     private ResumeStateStore mResumeStateStore;
+     private final Handler mResumeStateHandler = new Handler();
      /**媒体通知管理*/
      private MediaNotificationManager mMediaNotificationManager;
      private Bundle mSessionExtras;
@@ -183,7 +208,10 @@
          super.onCreate();
          LogHelper.d(TAG, "onCreate");
 
-         mMusicProvider = new MusicProvider();
+         mMusicProvider = new MusicProvider(new RemoteJSONSource(),
+                 FavoritesStore.getInstance(this));
+         mResumeStateStore = new ResumeStateStore(
+                 new File(getFilesDir(), ResumeStateStore.FILE_NAME));
 
          // To make the app more responsive, fetch and cache catalog information now.
          // This can help improve the response time in the method
@@ -194,12 +222,13 @@
          mPackageValidator = new PackageValidator(this);
 
          //队列管理器,设置到播放管理者,管理播放数据的改变
-         QueueManager queueManager = new QueueManager(mMusicProvider, getResources(),
+         mQueueManager = new QueueManager(mMusicProvider, getResources(),
                  new QueueManager.MetadataUpdateListener() {
                      @Override
                      public void onMetadataChanged(MediaMetadataCompat metadata) {
                          //设置音乐数据
                          mSession.setMetadata(metadata);
+                         mQueuePublisher.onCurrentIndexChanged(mQueueManager.getCurrentIndex());
 
                      }
 
@@ -217,8 +246,8 @@
                      @Override
                      public void onQueueUpdated(String title,
                                                 List<MediaSessionCompat.QueueItem> newQueue) {
-                         mSession.setQueue(newQueue);
-                         mSession.setQueueTitle(title);
+                         mQueuePublisher.setQueue(title, newQueue,
+                                 mQueueManager.getCurrentIndex());
                      }
                  });
 
@@ -226,12 +255,13 @@
          LocalPlayback playback = new LocalPlayback(this, mMusicProvider);
 
          //播放管理
-         mPlaybackManager = new PlaybackManager(this, getResources(), mMusicProvider, queueManager,
+         mPlaybackManager = new PlaybackManager(this, getResources(), mMusicProvider, mQueueManager,
                  playback);
 
          // Start a new MediaSession
          mSession = new MediaSessionCompat(this, "MusicService");
          setSessionToken(mSession.getSessionToken());
+         mQueuePublisher = new SessionQueuePublisher(mSession);
          mSession.setCallback(mPlaybackManager.getMediaSessionCallback());
          mSession.setFlags(MediaSessionCompat.FLAG_HANDLES_MEDIA_BUTTONS |
                  MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS);
@@ -250,6 +280,19 @@
 
          mPlaybackManager.updatePlaybackState(null);
 
+         // Get back to what the last service was playing, paused, unless something was asked
+         // to play in the meantime. This doesn't wait for the catalog.
+         mResumeStateStore.read(new ResumeStateStore.Callback() {
+             @Override
+             public void onStateRead(ResumeStateStore.ResumeState state) {
+                 if (state != null && mQueueManager.getCurrentMusic() == null
+                         && mQueueManager.restoreQueue(state)) {
+                     LogHelper.d(TAG, "Resuming at ", state.index, " of ", state.title);
+                     mPlaybackManager.handleRestoreRequest(state.positionMs);
+                 }
+             }
+         });
+
          try {
              mMediaNotificationManager = new MediaNotificationManager(this);
          } catch (RemoteException e) {
@@ -287,6 +330,8 @@
                      mPlaybackManager.handlePauseRequest();
                  } else if (CMD_STOP_CASTING.equals(command)) {//切换播放模式
                      CastContext.getSharedInstance(this).getSessionManager().endCurrentSession(true);
+                 } else if (CMD_DOWNLOAD.equals(command)) {
+                     downloadTracks(startIntent.getStringExtra(EXTRA_MEDIA_ID));
                  }
              } else {//不包含需要执行的命令
                  // Try to handle the intent as a media button event wrapped by MediaButtonReceiver
@@ -321,6 +366,11 @@
      public void onDestroy() {
          LogHelper.d(TAG, "onDestroy");
          unregisterCarConnectionReceiver();
+         // Saved before stopping, which loses the position.
+         mResumeStateStore.save(mQueueManager.getResumeState(
+                 Math.max(0, mPlaybackManager.getPlayback().getCurrentStreamPosition())));
+         mResumeStateStore.close();
+         mResumeStateHandler.removeCallbacks(mSaveResumeStateRunnable);
          // Service is being killed, so make sure we release our resources
          mPlaybackManager.handleStopRequest(null);//停止播放更新状态
          mMediaNotificationManager.stopNotification();//取消播放通知
@@ -331,7 +381,36 @@
          }
 
          mDelayedStopHandler.removeCallbacksAndMessages(null);//移除所有消息
+         mPackageValidator.release();
+         // The stop above queued a state that must not reach the released session.
+         mPlaybackManager.release();
          mSession.release();//释放资源
+         // Don't wait for the batch, the process may go away with the service.
+         FavoritesStore.getInstance(this).flush();
+     }
+
+     /**
+      * Writes the performance metrics, for {@code adb shell dumpsys activity service
+      * com.example.android.uamp/.MusicService}.
+      */
+     @Override
+     protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+         PerfMetrics.dump(writer);
+
+         PlaybackPipeline pipeline = PlaybackPipeline.getInstance(this);
+         writer.println("Playback pipeline:");
+         writer.println("  time to first audio: last=" + pipeline.getLastTimeToFirstAudioMs()
+                 + "ms avg=" + pipeline.getAverageTimeToFirstAudioMs() + "ms");
+         writer.println("  rebuffers: " + pipeline.getRebufferCount());
+         writer.println("  bandwidth estimate: " + pipeline.getBandwidthEstimate() + "bps");
+         writer.println("  cache: size=" + pipeline.getCacheSizeBytes() + " hitBytes="
+                 + pipeline.getCacheHitBytes() + " networkBytes=" + pipeline.getNetworkBytes());
+
+         if (mQueuePublisher != null) {
+             writer.println("Session queue: updates=" + mQueuePublisher.getPublishCount()
+                     + " windowBytes=" + mQueuePublisher.getWindowBytes()
+                     + " totalItems=" + mQueuePublisher.getTotalPublishedItems());
+         }
      }
 
      /**
@@ -391,12 +470,15 @@
          //客户端浏览器mMediaBrowser.subscribe()发起订阅后回调用该方法
          Log.e("RunTestT","------查询数据-------???");
          LogHelper.d(TAG, "OnLoadChildren: parentMediaId=", parentMediaId);
+         final long start = PerfMetrics.now();
          if (MEDIA_ID_EMPTY_ROOT.equals(parentMediaId)) {//不允许连接,返回空目录
              result.sendResult(new ArrayList<MediaItem>());
          } else if (mMusicProvider.isInitialized()) {//媒体资源初始化完成
              // if music library is ready, return immediately  资源准备完毕,直接返回媒体资源
              result.sendResult(mMusicProvider.getChildren(parentMediaId, getResources()));
+             PerfMetrics.endSpan(PerfMetrics.SPAN_LOAD_CHILDREN, start);
          } else {
+             PerfMetrics.increment(PerfMetrics.COUNTER_LOAD_CHILDREN_DEFERRED);
              // otherwise, only return results when the music library is retrieved
              //否则，仅在检索音乐库时返回结果
              result.detach();//延迟返回结果
@@ -404,11 +486,45 @@
                  @Override
                  public void onMusicCatalogReady(boolean success) {
                      result.sendResult(mMusicProvider.getChildren(parentMediaId, getResources()));
+                     // Includes the wait for the catalog.
+                     PerfMetrics.endSpan(PerfMetrics.SPAN_LOAD_CHILDREN, start);
                  }
              });
          }
      }
 
+     /**
+      * Downloads the tracks under the given browsable mediaId (for example, a genre), or the
+      * tracks of the current queue if mediaId is null, so they can be played offline.
+      */
+     private void downloadTracks(final String mediaId) {
+         mMusicProvider.retrieveMediaAsync(new MusicProvider.Callback() {
+             @Override
+             public void onMusicCatalogReady(boolean success) {
+                 if (!success) {
+                     LogHelper.w(TAG, "Catalog not available, can't download ", mediaId);
+                     return;
+                 }
+                 List<MediaSessionCompat.QueueItem> queue = mediaId == null
+                         ? mQueueManager.getCurrentQueue()
+                         : QueueHelper.getPlayingQueue(mediaId, mMusicProvider);
+                 if (queue == null) {
+                     return;
+                 }
+                 List<MediaMetadataCompat> tracks = new ArrayList<>(queue.size());
+                 for (MediaSessionCompat.QueueItem item : queue) {
+                     MediaMetadataCompat track = mMusicProvider.getMusic(
+                             MediaIDHelper.extractMusicIDFromMediaID(
+                                     item.getDescription().getMediaId()));
+                     if (track != null) {
+                         tracks.add(track);
+                     }
+                 }
+                 TrackDownloader.getInstance(MusicService.this).download(tracks);
+             }
+         });
+     }
+
      /**
       * Callback method called from PlaybackManager whenever the music is about to play.
       */
@@ -448,6 +564,35 @@
      @Override
      public void onPlaybackStateUpdated(PlaybackStateCompat newState) {//播放状态更新
          mSession.setPlaybackState(newState);//更新MediaSessionCompat的播放状态
+         mResumeStateHandler.removeCallbacks(mSaveResumeStateRunnable);
+         switch (newState.getState()) {
+             case PlaybackStateCompat.STATE_PLAYING:
+                 // No state is published while a track plays on, so the position is saved
+                 // periodically too, for when the process is killed.
+                 mResumeStateHandler.postDelayed(mSaveResumeStateRunnable,
+                         RESUME_STATE_SAVE_INTERVAL_MS);
+                 // Fall through.
+             case PlaybackStateCompat.STATE_PAUSED:
+             case PlaybackStateCompat.STATE_BUFFERING:
+                 // Other states have no position worth resuming from.
+                 mResumeStateStore.save(mQueueManager.getResumeState(
+                         Math.max(0, newState.getPosition())));
+                 break;
+         }
+     }
+
+     private final Runnable mSaveResumeStateRunnable = new Runnable() {
+         @Override
+         public void run() {
+             mResumeStateStore.save(mQueueManager.getResumeState(
+                     Math.max(0, mPlaybackManager.getPlayback().getCurrentStreamPosition())));
+             mResumeStateHandler.postDelayed(this, RESUME_STATE_SAVE_INTERVAL_MS);
+         }
+     };
+
+     @Override
+     public void onFavoritesChanged() {
+         notifyChildrenChanged(MEDIA_ID_MUSICS_BY_FAVORITES);
      }
 
      private void registerCarConnectionReceiver() {//注册链接服务广播
@@ -15,10 +15,16 @@
  */
 package com.example.android.uamp;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.content.pm.Signature;
 import android.content.res.XmlResourceParser;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Process;
 import android.util.Base64;
 import android.util.Log;
@@ -28,9 +34,15 @@ import com.example.android.uamp.utils.LogHelper;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Validates that the calling package is authorized to browse a
@@ -47,19 +59,80 @@ import java.util.Map;
  * 如果向允许的媒体浏览器callers.xml添加新的有效调用方并且您不知道其签名，则此类将使用正确的base64
  * 版本的调用方证书打印到logcat（INFO级别），该消息尚未验证。 您可以从logcat复制并粘贴到
  * 允许的媒体浏览器callers.xml中。 空格和换行符被忽略。
+ *
+ * Media browsers such as Android Auto or Wear reconnect often, so the result of each check is
+ * remembered per package and uid until that package is installed, updated or removed again.
  */
 public class PackageValidator {
     private static final String TAG = LogHelper.makeLogTag(PackageValidator.class);
 
     /**
-     * Map allowed callers' certificate keys to the expected caller information.
-     *
+     * Map allowed callers' certificate digests (see {@link #getDigest(byte[])}) to the expected
+     * caller information. It's read in the background, so creating the validator doesn't
+     * delay the service startup; see {@link #getValidCertificates()}.
+     */
+    private volatile FutureTask<Map<String, ArrayList<CallerInfo>>> mValidCertificates;
+
+    /**
+     * Results of previous checks, keyed by {@link #getCacheKey(String, int)}.
      */
-    private final Map<String, ArrayList<CallerInfo>> mValidCertificates;
+    private final Map<String, Boolean> mVerifiedCallers = new ConcurrentHashMap<>();
+
+    // The platform signature can't change while we are running, so it's only looked up once.
+    private Signature mPlatformSignature;
+
+    private final Context mContext;
 
     public PackageValidator(Context ctx) {
-        mValidCertificates = readValidCertificates(ctx.getResources().getXml(
-            R.xml.allowed_media_browser_callers));
+        mContext = ctx.getApplicationContext();
+        mValidCertificates = readValidCertificatesAsync();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        mContext.registerReceiver(mPackageChangeReceiver, filter);
+    }
+
+    /**
+     * Stops listening to package changes. The validator shouldn't be used after this.
+     */
+    public void release() {
+        mContext.unregisterReceiver(mPackageChangeReceiver);
+        mVerifiedCallers.clear();
+    }
+
+    private FutureTask<Map<String, ArrayList<CallerInfo>>> readValidCertificatesAsync() {
+        FutureTask<Map<String, ArrayList<CallerInfo>>> task = new FutureTask<>(
+                new Callable<Map<String, ArrayList<CallerInfo>>>() {
+                    @Override
+                    public Map<String, ArrayList<CallerInfo>> call() {
+                        return readValidCertificates(mContext.getResources().getXml(
+                            R.xml.allowed_media_browser_callers));
+                    }
+                });
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+        return task;
+    }
+
+    /**
+     * @return the allowed certificates, waiting for them to be read if needed, or null if they
+     * couldn't be read this time. Only the callers that aren't the system, this app or cached
+     * already have to wait.
+     */
+    private Map<String, ArrayList<CallerInfo>> getValidCertificates() {
+        try {
+            return mValidCertificates.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogHelper.e(TAG, e, "Could not read allowed callers from XML.");
+            // Try again for the next caller.
+            mValidCertificates = readValidCertificatesAsync();
+        }
+        return null;
     }
 
     private Map<String, ArrayList<CallerInfo>> readValidCertificates(XmlResourceParser parser) {
@@ -74,22 +147,25 @@ public class PackageValidator {
                     String packageName = parser.getAttributeValue(null, "package");
                     boolean isRelease = parser.getAttributeBooleanValue(null, "release", false);
                     String certificate = parser.nextText().replaceAll("\\s|\\n", "");
+                    String digest = getDigest(Base64.decode(certificate, Base64.DEFAULT));
 
                     CallerInfo info = new CallerInfo(name, packageName, isRelease);
 
-                    ArrayList<CallerInfo> infos = validCertificates.get(certificate);
+                    ArrayList<CallerInfo> infos = validCertificates.get(digest);
                     if (infos == null) {
                         infos = new ArrayList<>();
-                        validCertificates.put(certificate, infos);
+                        validCertificates.put(digest, infos);
+                    }
+                    if (LogHelper.isLoggable(TAG, Log.VERBOSE)) {
+                        LogHelper.v(TAG, "Adding allowed caller: ", info.name,
+                            " package=", info.packageName, " release=", info.release,
+                            " certificate=", certificate);
                     }
-                    LogHelper.v(TAG, "Adding allowed caller: ", info.name,
-                        " package=", info.packageName, " release=", info.release,
-                        " certificate=", certificate);
                     infos.add(info);
                 }
                 eventType = parser.next();
             }
-        } catch (XmlPullParserException | IOException e) {
+        } catch (XmlPullParserException | IOException | IllegalArgumentException e) {
             LogHelper.e(TAG, e, "Could not read allowed callers from XML.");
         }
         return validCertificates;
@@ -101,41 +177,54 @@ public class PackageValidator {
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public boolean isCallerAllowed(Context context, String callingPackage, int callingUid) {
-        Log.e("RunTest","----验证------001---???");
         // Always allow calls from the framework, self app or development environment.
         if (Process.SYSTEM_UID == callingUid || Process.myUid() == callingUid) {
             return true;
         }
-        Log.e("RunTest","----验证-----002----???");
 
-        if (isPlatformSigned(context, callingPackage)) {
-            return true;
+        String cacheKey = getCacheKey(callingPackage, callingUid);
+        Boolean verified = mVerifiedCallers.get(cacheKey);
+        if (verified == null) {
+            verified = verifyCaller(context, callingPackage);
+            if (verified == null) {
+                // Not known without the allowed certificates, so the next call checks again.
+                return false;
+            }
+            mVerifiedCallers.put(cacheKey, verified);
         }
-        Log.e("RunTest","----验证-----003----???");
+        return verified;
+    }
 
+    /**
+     * @return whether the caller is allowed, or null if the allowed certificates couldn't be
+     * read to tell.
+     */
+    private Boolean verifyCaller(Context context, String callingPackage) {
         PackageInfo packageInfo = getPackageInfo(context, callingPackage);
-        if (packageInfo == null) {
+        if (packageInfo == null || packageInfo.signatures == null) {
             return false;
         }
-        Log.e("RunTest","----验证------004---???");
+
+        if (isPlatformSigned(context, packageInfo)) {
+            return true;
+        }
 
         if (packageInfo.signatures.length != 1) {
             LogHelper.w(TAG, "Caller does not have exactly one signature certificate!");
             return false;
         }
-        Log.e("RunTest","----验证-----005----???");
-
-        String signature = Base64.encodeToString(
-            packageInfo.signatures[0].toByteArray(), Base64.NO_WRAP);
 
-        Log.e("RunTest","----验证----006-----???");
         // Test for known signatures:
-        ArrayList<CallerInfo> validCallers = mValidCertificates.get(signature);
-        Log.e("RunTest","----验证----006-----???"+validCallers);
+        byte[] certificate = packageInfo.signatures[0].toByteArray();
+        Map<String, ArrayList<CallerInfo>> validCertificates = getValidCertificates();
+        if (validCertificates == null) {
+            return null;
+        }
+        ArrayList<CallerInfo> validCallers = validCertificates.get(getDigest(certificate));
         if (validCallers == null) {
             LogHelper.e(TAG, "Signature for caller ", callingPackage, " is not valid: \n"
-                , signature);
-            if (mValidCertificates.isEmpty()) {
+                , Base64.encodeToString(certificate, Base64.NO_WRAP));
+            if (validCertificates.isEmpty()) {
                 LogHelper.w(TAG, "The list of valid certificates is empty. Either your file ",
                         "res/xml/allowed_media_browser_callers.xml is empty or there was an error ",
                         "while reading it. Check previous log messages.");
@@ -143,24 +232,22 @@ public class PackageValidator {
             return false;
         }
 
-
-        Log.e("RunTest","----验证-----007----???");
         // Check if the package name is valid for the certificate:
         StringBuffer expectedPackages = new StringBuffer();
         for (CallerInfo info: validCallers) {
             if (callingPackage.equals(info.packageName)) {
-                LogHelper.e(TAG, "Valid caller: ", info.name, "  package=", info.packageName,
+                LogHelper.i(TAG, "Valid caller: ", info.name, "  package=", info.packageName,
                     " release=", info.release);
                 return true;
             }
             expectedPackages.append(info.packageName).append(' ');
         }
-        Log.e("RunTest","----验证-------008--???");
 
         LogHelper.i(TAG, "Caller has a valid certificate, but its package doesn't match any ",
                 "expected package for the given certificate. Caller's package is ", callingPackage,
                 ". Expected packages as defined in res/xml/allowed_media_browser_callers.xml are (",
-                expectedPackages, "). This caller's certificate is: \n", signature);
+                expectedPackages, "). This caller's certificate is: \n",
+                Base64.encodeToString(certificate, Base64.NO_WRAP));
 
         return false;
     }
@@ -169,20 +256,20 @@ public class PackageValidator {
      * @return true if the installed package signature matches the platform signature.
      * 如果安装的包签名与平台签名匹配
      */
-    private boolean isPlatformSigned(Context context, String pkgName) {
-        PackageInfo platformPackageInfo = getPackageInfo(context, "android");
+    private boolean isPlatformSigned(Context context, PackageInfo clientPackageInfo) {
+        if (mPlatformSignature == null) {
+            PackageInfo platformPackageInfo = getPackageInfo(context, "android");
 
-        // Should never happen.
-        if (platformPackageInfo == null || platformPackageInfo.signatures == null
-                || platformPackageInfo.signatures.length == 0) {
-            return false;
+            // Should never happen.
+            if (platformPackageInfo == null || platformPackageInfo.signatures == null
+                    || platformPackageInfo.signatures.length == 0) {
+                return false;
+            }
+            mPlatformSignature = platformPackageInfo.signatures[0];
         }
 
-        PackageInfo clientPackageInfo = getPackageInfo(context, pkgName);
-
-        return (clientPackageInfo != null && clientPackageInfo.signatures != null
-                && clientPackageInfo.signatures.length > 0 &&
-                platformPackageInfo.signatures[0].equals(clientPackageInfo.signatures[0]));
+        return (clientPackageInfo.signatures.length > 0 &&
+                mPlatformSignature.equals(clientPackageInfo.signatures[0]));
     }
 
     /**
@@ -198,6 +285,45 @@ public class PackageValidator {
         return null;
     }
 
+    private static String getCacheKey(String packageName, int uid) {
+        return packageName + ':' + uid;
+    }
+
+    /**
+     * @return the SHA-256 digest of the given certificate, as a base64 string.
+     */
+    private static String getDigest(byte[] certificate) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.encodeToString(messageDigest.digest(certificate), Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always available on Android.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Forgets the results for a package when it's installed, updated or removed, since its
+     * signature or uid may have changed.
+     */
+    private final BroadcastReceiver mPackageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            String packageName = data == null ? null : data.getSchemeSpecificPart();
+            if (packageName == null) {
+                mVerifiedCallers.clear();
+                return;
+            }
+            String prefix = packageName + ':';
+            for (String key : mVerifiedCallers.keySet()) {
+                if (key.startsWith(prefix)) {
+                    mVerifiedCallers.remove(key);
+                }
+            }
+        }
+    };
+
     private final static class CallerInfo {
         final String name;
         final String packageName;
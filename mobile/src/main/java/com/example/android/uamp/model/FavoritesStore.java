@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.model;
+
+import android.content.Context;
+
+import com.example.android.uamp.utils.LogHelper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the favorite tracks in local storage, so they survive the process.
+ *
+ * The favorites are stored as an append-only log, one line per change: "+musicId" when a
+ * track is starred and "-musicId" when it isn't anymore. Loading replays the log in a single
+ * pass. Changes are batched and appended on a background thread, a short while after the first
+ * one, so toggling doesn't touch the disk on the main thread. When the log has many more lines
+ * than favorites, it is compacted: the favorites are written to a new file, which replaces the
+ * log.
+ */
+public class FavoritesStore {
+
+    private static final String TAG = LogHelper.makeLogTag(FavoritesStore.class);
+
+    private static final String LOG_FILE = "favorites.log";
+    private static final String COMPACT_SUFFIX = ".new";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char ADDED = '+';
+    private static final char REMOVED = '-';
+
+    // How long changes are collected before they are written.
+    private static final long WRITE_DELAY_MS = 500;
+    // How long to wait before writing again changes that couldn't be written.
+    private static final long RETRY_DELAY_MS = 5000;
+    // The log is compacted when it has more lines than this and twice the favorites.
+    private static final int COMPACT_MIN_LINES = 256;
+
+    private static FavoritesStore sInstance;
+
+    private final File mFile;
+    // Every read and write of the file happens on this thread, in order.
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    // Changes not written yet, guarded by this.
+    private List<String> mPendingLines = new ArrayList<>();
+
+    // Only used on the executor.
+    private final Set<String> mFavorites = new HashSet<>();
+    private int mLineCount;
+    private boolean mLoaded;
+
+    public static synchronized FavoritesStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FavoritesStore(
+                    new File(context.getApplicationContext().getFilesDir(), LOG_FILE));
+        }
+        return sInstance;
+    }
+
+    FavoritesStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the favorites, including the changes not written yet. Blocks until they are read, so
+     * it must not be called from the main thread.
+     */
+    public Set<String> load() {
+        try {
+            return mExecutor.submit(new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() {
+                    ensureLoaded();
+                    writePendingLines();
+                    Set<String> favorites = new HashSet<>(mFavorites);
+                    // With the changes that couldn't be written, if any.
+                    synchronized (FavoritesStore.this) {
+                        for (String line : mPendingLines) {
+                            apply(favorites, line);
+                        }
+                    }
+                    return favorites;
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogHelper.e(TAG, e, "Could not load the favorites");
+        }
+        return new HashSet<>();
+    }
+
+    /**
+     * Records a change of the given track, to be written shortly.
+     */
+    public void setFavorite(String musicId, boolean favorite) {
+        boolean first;
+        synchronized (this) {
+            first = mPendingLines.isEmpty();
+            mPendingLines.add((favorite ? ADDED : REMOVED) + musicId);
+        }
+        if (first) {
+            scheduleWrite(WRITE_DELAY_MS);
+        }
+    }
+
+    private void scheduleWrite(long delayMs) {
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+                writePendingLines();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the pending changes now, for example before the process is killed. Doesn't wait
+     * for them to be written.
+     */
+    public void flush() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+                writePendingLines();
+            }
+        });
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.isFile()) {
+            return;
+        }
+        long start = System.nanoTime();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                apply(mFavorites, line);
+                mLineCount++;
+            }
+        } catch (IOException e) {
+            // Keeps what could be read: a line cut by a crash only loses that change.
+            LogHelper.w(TAG, e, "Could not read all the favorites");
+        } finally {
+            close(reader);
+        }
+        LogHelper.d(TAG, "Loaded ", mFavorites.size(), " favorites from ", mLineCount,
+                " lines in ", (System.nanoTime() - start) / 1000000, "ms");
+    }
+
+    // Returns whether the line changed the given favorites.
+    private static boolean apply(Set<String> favorites, String line) {
+        if (line.length() < 2) {
+            return false;
+        }
+        String musicId = line.substring(1);
+        if (line.charAt(0) == ADDED) {
+            return favorites.add(musicId);
+        } else if (line.charAt(0) == REMOVED) {
+            return favorites.remove(musicId);
+        }
+        return false;
+    }
+
+    private void writePendingLines() {
+        List<String> lines;
+        synchronized (this) {
+            if (mPendingLines.isEmpty()) {
+                return;
+            }
+            lines = mPendingLines;
+            mPendingLines = new ArrayList<>();
+        }
+        // Only the lines that change something are appended.
+        List<String> applied = new ArrayList<>(lines.size());
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            if (apply(mFavorites, line)) {
+                applied.add(line);
+                sb.append(line).append('\n');
+            }
+        }
+        mLineCount += applied.size();
+        boolean compact = mLineCount > COMPACT_MIN_LINES && mLineCount > 2 * mFavorites.size();
+        if ((compact && compact()) || sb.length() == 0 || write(mFile, sb.toString(), true)) {
+            return;
+        }
+
+        // Nothing was written: the favorites go back to what the file has, and the changes
+        // are written again later, before the ones made since.
+        for (int i = applied.size() - 1; i >= 0; i--) {
+            String line = applied.get(i);
+            apply(mFavorites, (line.charAt(0) == ADDED ? REMOVED : ADDED) + line.substring(1));
+        }
+        mLineCount -= applied.size();
+        synchronized (this) {
+            lines.addAll(mPendingLines);
+            mPendingLines = lines;
+        }
+        scheduleWrite(RETRY_DELAY_MS);
+    }
+
+    // Replaces the log with the favorites. Returns false if the old log is still used.
+    private boolean compact() {
+        Set<String> favorites = new LinkedHashSet<>(mFavorites);
+        StringBuilder sb = new StringBuilder();
+        for (String musicId : favorites) {
+            sb.append(ADDED).append(musicId).append('\n');
+        }
+        File compacted = new File(mFile.getPath() + COMPACT_SUFFIX);
+        if (write(compacted, sb.toString(), false) && compacted.renameTo(mFile)) {
+            LogHelper.d(TAG, "Compacted ", mLineCount, " lines to ", favorites.size());
+            mLineCount = favorites.size();
+            return true;
+        }
+        // The old log is still good: the changes are appended to it, and compacting is tried
+        // again with the next ones.
+        //noinspection ResultOfMethodCallIgnored
+        compacted.delete();
+        return false;
+    }
+
+    private static boolean write(File file, String text, boolean append) {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            LogHelper.w(TAG, "Could not create ", directory);
+            return false;
+        }
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file, append);
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            writer.write(text);
+            writer.flush();
+            out.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            LogHelper.w(TAG, e, "Could not write ", file);
+            return false;
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
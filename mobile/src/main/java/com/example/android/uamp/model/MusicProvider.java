@@ -28,16 +28,21 @@ import android.support.v4.media.MediaMetadataCompat;
 import com.example.android.uamp.R;
 import com.example.android.uamp.utils.LogHelper;
 import com.example.android.uamp.utils.MediaIDHelper;
+import com.example.android.uamp.utils.PerfMetrics;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_FAVORITES;
 import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE;
 import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_ROOT;
 import static com.example.android.uamp.utils.MediaIDHelper.createMediaID;
@@ -62,6 +67,12 @@ public class MusicProvider {
 
     /**最喜欢的曲目集合*/
     private final Set<String> mFavoriteTracks;
+    /**Where the favorites are persisted, or null to keep them in memory only*/
+    private final FavoritesStore mFavoritesStore;
+    /**Whether the favorites were loaded from the store, guarded by mFavoriteTracks*/
+    private boolean mFavoritesLoaded;
+    /**Changes made before the favorites were loaded, which win over the loaded ones*/
+    private final Map<String, Boolean> mFavoriteChangesBeforeLoad = new HashMap<>();
 
     /**未初始化,初始化中,初始化结束*/
     enum State {
@@ -71,6 +82,9 @@ public class MusicProvider {
     /**当前初始化状态*/
     private volatile State mCurrentState = State.NON_INITIALIZED;
 
+    /**Incremented each time the catalog is (re)loaded, so derived data can be invalidated*/
+    private volatile int mCatalogVersion;
+
     /**音乐目录是够已准备好的回调*/
     public interface Callback {
         void onMusicCatalogReady(boolean success);
@@ -80,10 +94,43 @@ public class MusicProvider {
         this(new RemoteJSONSource());
     }
     public MusicProvider(MusicProviderSource source) {
+        this(source, null);
+    }
+
+    /**
+     * @param favoritesStore where favorites are loaded from and saved to. They are loaded in the
+     *                       background right away, without waiting for the catalog, so they
+     *                       are known for tracks restored before the catalog is loaded.
+     */
+    public MusicProvider(MusicProviderSource source, FavoritesStore favoritesStore) {
         mSource = source;//远程资源
+        mFavoritesStore = favoritesStore;
         mMusicListByGenre = new ConcurrentHashMap<>();//通过流派分类的云月列表
         mMusicListById = new ConcurrentHashMap<>();//通过id分类的音乐列表
         mFavoriteTracks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        if (favoritesStore != null) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loadFavorites();
+                }
+            });
+        } else {
+            mFavoritesLoaded = true;
+        }
+    }
+
+    private void loadFavorites() {
+        Set<String> favorites = mFavoritesStore.load();
+        synchronized (mFavoriteTracks) {
+            for (String musicId : favorites) {
+                if (!mFavoriteChangesBeforeLoad.containsKey(musicId)) {
+                    mFavoriteTracks.add(musicId);
+                }
+            }
+            mFavoriteChangesBeforeLoad.clear();
+            mFavoritesLoaded = true;
+        }
     }
 
     /**
@@ -193,6 +240,15 @@ public class MusicProvider {
         return mMusicListById.containsKey(musicId) ? mMusicListById.get(musicId).metadata : null;
     }
 
+    /**
+     * Makes a track saved in a previous run known before the catalog is loaded, so it can be
+     * played right away. The catalog replaces it when it's loaded, if it still has the track.
+     */
+    public void addRestoredMusic(MediaMetadataCompat metadata) {
+        String musicId = metadata.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+        mMusicListById.putIfAbsent(musicId, new MutableMediaMetadata(musicId, metadata));
+    }
+
     /**跟新音乐艺术,更新mMusicListById列表中指定id的metadata数据*/
     public synchronized void updateMusicArt(String musicId, Bitmap albumArt, Bitmap icon) {
         MediaMetadataCompat metadata = getMusic(musicId);//获取符合条件的MediaMetadataCompat
@@ -220,13 +276,55 @@ public class MusicProvider {
         mutableMetadata.metadata = metadata;
     }
 
+    /**
+     * @return a number that changes whenever the track metadata is reloaded. Data computed from
+     * tracks can be cached as long as this stays the same.
+     */
+    public int getCatalogVersion() {
+        return mCatalogVersion;
+    }
+
     /**设置喜欢的音乐,true添加,false移除*/
     public void setFavorite(String musicId, boolean favorite) {
-        if (favorite) {
-            mFavoriteTracks.add(musicId);
-        } else {
-            mFavoriteTracks.remove(musicId);
+        boolean changed;
+        synchronized (mFavoriteTracks) {
+            changed = favorite
+                    ? mFavoriteTracks.add(musicId) : mFavoriteTracks.remove(musicId);
+            if (!mFavoritesLoaded) {
+                // The stored favorites aren't known yet, so the change is always written.
+                mFavoriteChangesBeforeLoad.put(musicId, favorite);
+                changed = true;
+            }
         }
+        if (changed && mFavoritesStore != null) {
+            mFavoritesStore.setFavorite(musicId, favorite);
+        }
+    }
+
+    /**
+     * @return the favorite tracks of the catalog, by title.
+     */
+    public List<MediaMetadataCompat> getFavoriteMusic() {
+        if (mCurrentState != State.INITIALIZED) {
+            return Collections.emptyList();
+        }
+        List<MediaMetadataCompat> favorites = new ArrayList<>(mFavoriteTracks.size());
+        for (String musicId : mFavoriteTracks) {
+            MediaMetadataCompat metadata = getMusic(musicId);
+            // Favorites of tracks that left the catalog are kept, in case they come back.
+            if (metadata != null) {
+                favorites.add(metadata);
+            }
+        }
+        Collections.sort(favorites, new Comparator<MediaMetadataCompat>() {
+            @Override
+            public int compare(MediaMetadataCompat a, MediaMetadataCompat b) {
+                return String.CASE_INSENSITIVE_ORDER.compare(
+                        a.getString(MediaMetadataCompat.METADATA_KEY_TITLE),
+                        b.getString(MediaMetadataCompat.METADATA_KEY_TITLE));
+            }
+        });
+        return favorites;
     }
 
     /**初始化结束*/
@@ -302,6 +400,7 @@ public class MusicProvider {
         try {
             if (mCurrentState == State.NON_INITIALIZED) {//未初始化
                 mCurrentState = State.INITIALIZING;//初始化中
+                long start = PerfMetrics.now();
 
                 Iterator<MediaMetadataCompat> tracks = mSource.iterator();//获取音乐资源迭代器
                 while (tracks.hasNext()) {//遍历音乐资源
@@ -313,8 +412,10 @@ public class MusicProvider {
                 }
                 //根据流派构建列表
                 buildListsByGenre();
+                mCatalogVersion++;
                 //初始化结束
                 mCurrentState = State.INITIALIZED;
+                PerfMetrics.endSpan(PerfMetrics.SPAN_CATALOG_RETRIEVE, start);
             }
         } finally {
             if (mCurrentState != State.INITIALIZED) {//未初始化完成异常,则标记为未初始化
@@ -323,6 +424,7 @@ public class MusicProvider {
                 //发生了一些不好的事情，所以我们将状态重置为NON INITIALIZED以允许重试（
                 // 例如，如果网络连接暂时不可用）
                 mCurrentState = State.NON_INITIALIZED;
+                PerfMetrics.increment(PerfMetrics.COUNTER_CATALOG_RETRIEVE_FAILED);
             }
         }
     }
@@ -340,6 +442,11 @@ public class MusicProvider {
         //"__ROOT__"等于mediaId
         if (MEDIA_ID_ROOT.equals(mediaId)) {//为Root创建可浏览媒体项
             mediaItems.add(createBrowsableMediaItemForRoot(resources));
+            mediaItems.add(createBrowsableMediaItemForFavorites(resources));
+        } else if (MEDIA_ID_MUSICS_BY_FAVORITES.equals(mediaId)) {
+            for (MediaMetadataCompat metadata : getFavoriteMusic()) {
+                mediaItems.add(createMediaItem(metadata, MEDIA_ID_MUSICS_BY_FAVORITES));
+            }
         } else if (MEDIA_ID_MUSICS_BY_GENRE.equals(mediaId)) {//"__BY_GENRE__"
             for (String genre : getGenres()) {
                 mediaItems.add(createBrowsableMediaItemForGenre(genre, resources));
@@ -394,6 +501,19 @@ public class MusicProvider {
                 MediaBrowserCompat.MediaItem.FLAG_BROWSABLE);//有子项的
     }
 
+    private MediaBrowserCompat.MediaItem createBrowsableMediaItemForFavorites(
+            Resources resources) {
+        MediaDescriptionCompat description = new MediaDescriptionCompat.Builder()
+                .setMediaId(MEDIA_ID_MUSICS_BY_FAVORITES)
+                .setTitle(resources.getString(R.string.browse_favorites))
+                .setSubtitle(resources.getString(R.string.browse_favorites_subtitle))
+                .setIconUri(Uri.parse("android.resource://" +
+                        "com.example.android.uamp/drawable/ic_star_on"))
+                .build();
+        return new MediaBrowserCompat.MediaItem(description,
+                MediaBrowserCompat.MediaItem.FLAG_BROWSABLE);
+    }
+
     /**为流派创建可浏览媒体项目 */
     private MediaBrowserCompat.MediaItem createBrowsableMediaItemForGenre(String genre,
                                                                     Resources resources) {
@@ -408,6 +528,12 @@ public class MusicProvider {
     }
 
     private MediaBrowserCompat.MediaItem createMediaItem(MediaMetadataCompat metadata) {
+        String genre = metadata.getString(MediaMetadataCompat.METADATA_KEY_GENRE);
+        return createMediaItem(metadata, MEDIA_ID_MUSICS_BY_GENRE, genre);
+    }
+
+    private MediaBrowserCompat.MediaItem createMediaItem(MediaMetadataCompat metadata,
+                                                         String... categories) {
         // Since mediaMetadata fields are immutable, we need to create a copy, so we
         // can set a hierarchy-aware mediaID. We will need to know the media hierarchy
         // when we get a onPlayFromMusicID call, so we can create the proper queue based
@@ -415,10 +541,9 @@ public class MusicProvider {
         //由于媒体元数据字段是不可变的，我们需要创建一个副本，因此我们可以设置一个层次感知媒体ID。
         // 当我们获得Play From Music ID调用时，我们需要知道媒体层次结构，
         // 因此我们可以根据音乐的选择位置创建正确的队列（按艺术家，按流派，随机等）
-        String genre = metadata.getString(MediaMetadataCompat.METADATA_KEY_GENRE);
         //层次结构id
         String hierarchyAwareMediaID = MediaIDHelper.createMediaID(
-                metadata.getDescription().getMediaId(), MEDIA_ID_MUSICS_BY_GENRE, genre);
+                metadata.getDescription().getMediaId(), categories);
         MediaMetadataCompat copy = new MediaMetadataCompat.Builder(metadata)
                 .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, hierarchyAwareMediaID)
                 .build();
@@ -18,6 +18,7 @@ package com.example.android.uamp.model;
 
 import android.support.v4.media.MediaMetadataCompat;
 
+import com.example.android.uamp.BuildConfig;
 import com.example.android.uamp.utils.LogHelper;
 
 import org.json.JSONArray;
@@ -41,8 +42,8 @@ public class RemoteJSONSource implements MusicProviderSource {
 
     private static final String TAG = LogHelper.makeLogTag(RemoteJSONSource.class);
 
-    protected static final String CATALOG_URL =
-        "http://storage.googleapis.com/automotive-media/music.json";
+    // Set by the catalogUrl property of the build, to use another server.
+    protected static final String CATALOG_URL = BuildConfig.CATALOG_URL;
 
     private static final String JSON_MUSIC = "music";
     private static final String JSON_TITLE = "title";
@@ -55,15 +56,29 @@ public class RemoteJSONSource implements MusicProviderSource {
     private static final String JSON_TOTAL_TRACK_COUNT = "totalTrackCount";
     private static final String JSON_DURATION = "duration";
 
+    private final String mCatalogUrl;
+
+    public RemoteJSONSource() {
+        this(CATALOG_URL);
+    }
+
+    /**
+     * @param catalogUrl where to get the catalog from. Relative media and art URLs of the
+     *                   catalog are resolved against it, so they come from the same server.
+     */
+    public RemoteJSONSource(String catalogUrl) {
+        mCatalogUrl = catalogUrl;
+    }
+
     @Override
     public Iterator<MediaMetadataCompat> iterator() {
         try {
             //最后一个斜线的位置
-            int slashPos = CATALOG_URL.lastIndexOf('/');
+            int slashPos = mCatalogUrl.lastIndexOf('/');
             //音乐资源json数据的路径
-            String path = CATALOG_URL.substring(0, slashPos + 1);
+            String path = mCatalogUrl.substring(0, slashPos + 1);
             //拉取json数据
-            JSONObject jsonObj = fetchJSONFromUrl(CATALOG_URL);
+            JSONObject jsonObj = fetchJSONFromUrl(mCatalogUrl);
             //构建音乐数据集合
             ArrayList<MediaMetadataCompat> tracks = new ArrayList<>();
             //解析json数据
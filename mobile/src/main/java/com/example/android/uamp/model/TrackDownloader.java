@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.model;
+
+import android.content.Context;
+import android.support.v4.media.MediaMetadataCompat;
+
+import com.example.android.uamp.utils.LogHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Downloads tracks into local storage, so they can be played without a network connection.
+ *
+ * Tracks are fetched in batches on a background thread, with a few downloads running in
+ * parallel inside each batch. Partially downloaded files are kept, and the download resumes
+ * from where it stopped with an HTTP range request the next time the track is requested.
+ */
+public class TrackDownloader {
+
+    private static final String TAG = LogHelper.makeLogTag(TrackDownloader.class);
+
+    private static final String DOWNLOAD_DIR = "tracks";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private static final int BATCH_SIZE = 10;
+    private static final int PARALLEL_DOWNLOADS = 3;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 8000;
+    private static final int READ_TIMEOUT_MS = 8000;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static TrackDownloader sInstance;
+
+    private final File mDirectory;
+    // Runs one batch at a time, so a large request doesn't starve newer ones for too long.
+    private final ExecutorService mBatchExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService mDownloadExecutor =
+            Executors.newFixedThreadPool(PARALLEL_DOWNLOADS);
+    // Music IDs that are either queued or being downloaded.
+    private final Set<String> mPending =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public static synchronized TrackDownloader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrackDownloader(
+                    new File(context.getApplicationContext().getFilesDir(), DOWNLOAD_DIR));
+        }
+        return sInstance;
+    }
+
+    private TrackDownloader(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * @return the downloaded file of the given track, or null if it isn't fully downloaded.
+     */
+    public File getLocalFile(String musicId) {
+        File file = new File(mDirectory, musicId);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Queues the given tracks for download. Tracks that are already downloaded or queued are
+     * skipped.
+     */
+    public void download(Iterable<MediaMetadataCompat> tracks) {
+        // Keyed by music ID, so duplicates in the same request are only downloaded once.
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (MediaMetadataCompat track : tracks) {
+            String musicId = track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+            String source = track.getString(MusicProviderSource.CUSTOM_METADATA_TRACK_SOURCE);
+            if (musicId != null && source != null && getLocalFile(musicId) == null
+                    && mPending.add(musicId)) {
+                sources.put(musicId, source);
+            }
+        }
+        LogHelper.d(TAG, "Queuing ", sources.size(), " tracks for download");
+
+        List<Callable<Void>> batch = new ArrayList<>(BATCH_SIZE);
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            batch.add(new DownloadTask(entry.getKey(), entry.getValue()));
+            if (batch.size() == BATCH_SIZE) {
+                scheduleBatch(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            scheduleBatch(batch);
+        }
+    }
+
+    private void scheduleBatch(final List<Callable<Void>> batch) {
+        mBatchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mDownloadExecutor.invokeAll(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    private class DownloadTask implements Callable<Void> {
+        private final String mMusicId;
+        private final String mSource;
+
+        DownloadTask(String musicId, String source) {
+            mMusicId = musicId;
+            mSource = source;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                downloadTrack(mMusicId, mSource);
+            } catch (IOException e) {
+                LogHelper.w(TAG, e, "Could not download ", mSource);
+            } finally {
+                mPending.remove(mMusicId);
+            }
+            return null;
+        }
+    }
+
+    private void downloadTrack(String musicId, String source) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+        File partial = new File(mDirectory, musicId + PARTIAL_SUFFIX);
+        long offset = partial.length();
+        // The length of the whole file, or -1 if the server didn't tell.
+        long expectedLength;
+
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(source.replaceAll(" ", "%20")).openConnection();
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            if (offset > 0) {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+            }
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                // The partial file doesn't match the remote one anymore: start over next time.
+                //noinspection ResultOfMethodCallIgnored
+                partial.delete();
+            }
+            boolean resumed = responseCode == HttpURLConnection.HTTP_PARTIAL;
+            if (!resumed && responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response " + responseCode + " for " + source);
+            }
+            LogHelper.d(TAG, "Downloading ", source, resumed ? " from byte " : "",
+                    resumed ? offset : "");
+            expectedLength = getTotalLength(connection, resumed);
+
+            in = connection.getInputStream();
+            // If the server ignored the range, it is sending the whole file again.
+            out = new FileOutputStream(partial, resumed);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            if (in != null) {
+                in.close();
+            }
+            connection.disconnect();
+        }
+
+        // The connection may have been closed early, in which case the partial file is kept
+        // for the next download to resume.
+        long length = partial.length();
+        if (expectedLength >= 0 && length != expectedLength) {
+            if (length > expectedLength) {
+                // Doesn't match the remote file anymore.
+                //noinspection ResultOfMethodCallIgnored
+                partial.delete();
+            }
+            throw new IOException("Downloaded " + length + " of " + expectedLength
+                    + " bytes of " + source);
+        }
+        if (!partial.renameTo(new File(mDirectory, musicId))) {
+            throw new IOException("Could not move " + partial + " in place");
+        }
+        LogHelper.d(TAG, "Downloaded ", source);
+    }
+
+    /**
+     * @return the length of the whole remote file, from the Content-Range header of a partial
+     * response or the Content-Length of a full one, or -1 if it's not known.
+     */
+    private static long getTotalLength(HttpURLConnection connection, boolean partial) {
+        String value;
+        if (partial) {
+            // bytes <first>-<last>/<total>, where the total may be "*".
+            value = connection.getHeaderField("Content-Range");
+            int slash = value == null ? -1 : value.lastIndexOf('/');
+            value = slash < 0 ? null : value.substring(slash + 1);
+        } else {
+            value = connection.getHeaderField("Content-Length");
+        }
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.support.v4.app.ActivityManagerCompat;
+
+import com.example.android.uamp.utils.LogHelper;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+/**
+ * Picks the buffer sizes of the {@link LoadControl} used by {@link LocalPlayback}.
+ *
+ * Devices with little memory get a smaller buffer, bounded in bytes, so they don't hold more
+ * audio than they need. The buffer durations then follow the network: on a fast connection
+ * playback starts with less data buffered, while on a slow one, or after playback recently had
+ * to stop to rebuffer, more data is required before (re)starting so the player doesn't stall
+ * again.
+ *
+ * A player keeps its {@link LoadControl}, so {@link LocalPlayback} checks the policy whenever
+ * it prepares a new track, and creates a new player when the policy changed.
+ */
+public final class BufferingPolicy {
+
+    private static final String TAG = LogHelper.makeLogTag(BufferingPolicy.class);
+
+    // Estimated bandwidths, in bits per second, below or above which the network is considered
+    // slow or fast respectively.
+    private static final long SLOW_NETWORK_BPS = 512 * 1024;
+    private static final long FAST_NETWORK_BPS = 4 * 1024 * 1024;
+
+    // Memory class (heap limit, in MB) at or below which the device is treated as low memory.
+    private static final int LOW_MEMORY_CLASS_MB = 96;
+    // Upper bound of the buffer on low memory devices. At 320kbps this is still ~50s of audio.
+    private static final int LOW_MEMORY_TARGET_BUFFER_BYTES = 2 * 1024 * 1024;
+
+    // Number of recent rebuffers after which the network is treated as slow regardless of
+    // bandwidth.
+    private static final int FLAKY_NETWORK_REBUFFERS = 2;
+
+    private final boolean mLowMemory;
+    private final boolean mSlowNetwork;
+    private final boolean mFastNetwork;
+
+    private BufferingPolicy(boolean lowMemory, boolean slowNetwork, boolean fastNetwork) {
+        mLowMemory = lowMemory;
+        mSlowNetwork = slowNetwork;
+        mFastNetwork = fastNetwork;
+    }
+
+    /**
+     * @return the policy for the given device and the current network conditions, as measured
+     * by the given pipeline. Policies are equal when they create the same {@link LoadControl}.
+     */
+    public static BufferingPolicy getCurrent(Context context, PlaybackPipeline pipeline) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowMemory = ActivityManagerCompat.isLowRamDevice(activityManager)
+                || activityManager.getMemoryClass() <= LOW_MEMORY_CLASS_MB;
+        return create(lowMemory, pipeline.getBandwidthEstimate(),
+                pipeline.getRecentRebufferCount());
+    }
+
+    /**
+     * @param bandwidth the estimated bandwidth in bits per second, or
+     *                  {@link BandwidthMeter#NO_ESTIMATE}
+     * @param recentRebuffers the number of times playback recently stalled to rebuffer. Only
+     *                        recent ones count, so the policy recovers once the network does.
+     */
+    static BufferingPolicy create(boolean lowMemory, long bandwidth, int recentRebuffers) {
+        boolean slowNetwork = (bandwidth != BandwidthMeter.NO_ESTIMATE
+                && bandwidth < SLOW_NETWORK_BPS)
+                || recentRebuffers >= FLAKY_NETWORK_REBUFFERS;
+        boolean fastNetwork = !slowNetwork && bandwidth >= FAST_NETWORK_BPS;
+        LogHelper.d(TAG, "Buffering policy: lowMemory=", lowMemory, " bandwidth=", bandwidth,
+                " recentRebuffers=", recentRebuffers);
+        return new BufferingPolicy(lowMemory, slowNetwork, fastNetwork);
+    }
+
+    /**
+     * Creates a {@link LoadControl} with the buffer sizes of this policy.
+     */
+    public LoadControl createLoadControl() {
+        int minBufferMs = DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
+        int maxBufferMs = DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
+        int bufferForPlaybackMs = DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
+        int bufferForPlaybackAfterRebufferMs =
+                DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+        if (mSlowNetwork) {
+            minBufferMs = 30000;
+            maxBufferMs = 60000;
+            bufferForPlaybackMs = 5000;
+            bufferForPlaybackAfterRebufferMs = 10000;
+        } else if (mFastNetwork) {
+            // Any shortfall is quickly refilled, so there's no point in waiting for more.
+            minBufferMs = 10000;
+            bufferForPlaybackMs = 1000;
+            bufferForPlaybackAfterRebufferMs = 2500;
+        }
+        int targetBufferBytes = C.LENGTH_UNSET;
+        if (mLowMemory) {
+            maxBufferMs = Math.min(maxBufferMs, 30000);
+            minBufferMs = Math.min(minBufferMs, maxBufferMs);
+            targetBufferBytes = LOW_MEMORY_TARGET_BUFFER_BYTES;
+        }
+
+        LogHelper.d(TAG, "Creating load control: minBufferMs=", minBufferMs,
+                " maxBufferMs=", maxBufferMs, " bufferForPlaybackMs=", bufferForPlaybackMs);
+        return new DefaultLoadControl(
+                new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+                minBufferMs,
+                maxBufferMs,
+                bufferForPlaybackMs,
+                bufferForPlaybackAfterRebufferMs,
+                targetBufferBytes,
+                // On low memory devices, stop buffering at the byte limit even if that means
+                // holding less than minBufferMs.
+                !mLowMemory);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BufferingPolicy)) {
+            return false;
+        }
+        BufferingPolicy other = (BufferingPolicy) o;
+        return mLowMemory == other.mLowMemory
+                && mSlowNetwork == other.mSlowNetwork
+                && mFastNetwork == other.mFastNetwork;
+    }
+
+    @Override
+    public int hashCode() {
+        return (mLowMemory ? 4 : 0) | (mSlowNetwork ? 2 : 0) | (mFastNetwork ? 1 : 0);
+    }
+}
@@ -20,13 +20,16 @@ import android.net.Uri;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.text.TextUtils;
+import android.util.LruCache;
 
 import com.example.android.uamp.model.MusicProvider;
 import com.example.android.uamp.model.MusicProviderSource;
 import com.example.android.uamp.utils.LogHelper;
 import com.example.android.uamp.utils.MediaIDHelper;
+import com.example.android.uamp.utils.PerfMetrics;
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaMetadata;
+import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.gms.cast.MediaStatus;
 import com.google.android.gms.cast.framework.CastContext;
 import com.google.android.gms.cast.framework.CastSession;
@@ -36,10 +39,17 @@ import com.google.android.gms.common.images.WebImage;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static android.support.v4.media.session.MediaSessionCompat.QueueItem;
 
 /**
  * An implementation of Playback that talks to Cast.
+ *
+ * The receiver holds a small queue made of the current item followed by the next one, which it
+ * preloads before the current one ends. It then moves on to the next item by itself, without a
+ * gap, and skipping to it doesn't need a new load either.
  */
 public class CastPlayback implements Playback {
 
@@ -47,6 +57,10 @@ public class CastPlayback implements Playback {
 
     private static final String MIME_TYPE_AUDIO_MPEG = "audio/mpeg";
     private static final String ITEM_ID = "itemId";
+    // How long before the end of the current item the receiver starts loading the next one.
+    private static final double PRELOAD_TIME_SECONDS = 20;
+    // Enough for the queue window plus a few tracks the user may go back to.
+    private static final int MEDIA_INFO_CACHE_SIZE = 16;
 
     private final MusicProvider mMusicProvider;
     private final Context mAppContext;
@@ -59,6 +73,18 @@ public class CastPlayback implements Playback {
     private Callback mCallback;
     private long mCurrentPosition;
     private String mCurrentMediaId;
+    // The item that should follow the current one on the receiver, if any.
+    private String mNextMediaId;
+    // The item that was asked to be appended to the remote queue but isn't there yet.
+    private String mPendingAppendMediaId;
+
+    // MediaInfo built for each mediaId, valid for mMediaInfoCacheVersion of the catalog.
+    private final LruCache<String, MediaInfo> mMediaInfoCache =
+            new LruCache<>(MEDIA_INFO_CACHE_SIZE);
+    private int mMediaInfoCacheVersion = -1;
+    // When the last item was loaded (see PerfMetrics.now()), until the receiver plays it.
+    // A negative value means there is no pending measurement.
+    private long mLoadStartTime = -1;
 
     public CastPlayback(MusicProvider musicProvider, Context context) {
         mMusicProvider = musicProvider;
@@ -104,9 +130,28 @@ public class CastPlayback implements Playback {
 
     @Override
     public void play(QueueItem item) {
+        String mediaId = item.getDescription().getMediaId();
         try {
-            loadMedia(item.getDescription().getMediaId(), true);
-            mPlaybackState = PlaybackStateCompat.STATE_BUFFERING;
+            int remoteItemId = findRemoteItemId(mediaId);
+            if (!mRemoteMediaClient.hasMediaSession()
+                    || mRemoteMediaClient.getPlayerState() == MediaStatus.PLAYER_STATE_IDLE
+                    || remoteItemId == MediaQueueItem.INVALID_ITEM_ID) {
+                loadMedia(mediaId, true);
+            } else if (TextUtils.equals(mediaId, getMediaId(mRemoteMediaClient.getMediaInfo()))) {
+                // Already the current item on the receiver, for instance because it moved on
+                // to the preloaded item by itself.
+                mCurrentMediaId = mediaId;
+                if (!mRemoteMediaClient.isPlaying()) {
+                    mRemoteMediaClient.play();
+                }
+            } else {
+                // The item was preloaded on the receiver, jump to it.
+                mCurrentMediaId = mediaId;
+                mCurrentPosition = 0;
+                mRemoteMediaClient.queueJumpToItem(remoteItemId, null);
+            }
+            mPlaybackState = mRemoteMediaClient.isPlaying()
+                    ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_BUFFERING;
             if (mCallback != null) {
                 mCallback.onPlaybackStatusChanged(mPlaybackState);
             }
@@ -157,6 +202,13 @@ public class CastPlayback implements Playback {
         }
     }
 
+    @Override
+    public void setNextQueueItem(QueueItem item) {
+        String mediaId = item == null ? null : item.getDescription().getMediaId();
+        mNextMediaId = TextUtils.equals(mediaId, mCurrentMediaId) ? null : mediaId;
+        syncRemoteQueue();
+    }
+
     @Override
     public void setCurrentMediaId(String mediaId) {
         this.mCurrentMediaId = mediaId;
@@ -190,19 +242,130 @@ public class CastPlayback implements Playback {
     }
 
     private void loadMedia(String mediaId, boolean autoPlay) throws JSONException {
-        String musicId = MediaIDHelper.extractMusicIDFromMediaID(mediaId);
-        MediaMetadataCompat track = mMusicProvider.getMusic(musicId);
-        if (track == null) {
+        MediaInfo media = getMediaInfo(mediaId);
+        if (media == null) {
             throw new IllegalArgumentException("Invalid mediaId " + mediaId);
         }
         if (!TextUtils.equals(mediaId, mCurrentMediaId)) {
             mCurrentMediaId = mediaId;
             mCurrentPosition = 0;
         }
+        JSONObject customData = media.getCustomData();
+        // The next item is appended once the receiver reports the new queue.
+        mPendingAppendMediaId = null;
+        MediaQueueItem[] queue = {
+                new MediaQueueItem.Builder(media).setAutoplay(autoPlay).build()
+        };
+        mLoadStartTime = autoPlay ? PerfMetrics.now() : -1;
+        mRemoteMediaClient.queueLoad(queue, 0, MediaStatus.REPEAT_MODE_REPEAT_OFF,
+                mCurrentPosition, customData);
+    }
+
+    /**
+     * Makes the remote queue hold the current item followed by mNextMediaId, removing other
+     * items. Only the differences are sent to the receiver.
+     */
+    private void syncRemoteQueue() {
+        MediaStatus status = mRemoteMediaClient.getMediaStatus();
+        if (status == null || mCurrentMediaId == null) {
+            return;
+        }
+        boolean hasCurrent = false;
+        boolean hasNext = false;
+        List<Integer> staleItemIds = new ArrayList<>();
+        for (MediaQueueItem queueItem : status.getQueueItems()) {
+            String mediaId = getMediaId(queueItem.getMedia());
+            if (!hasCurrent && queueItem.getItemId() == status.getCurrentItemId()
+                    && TextUtils.equals(mediaId, mCurrentMediaId)) {
+                hasCurrent = true;
+            } else if (hasCurrent && !hasNext && mNextMediaId != null
+                    && TextUtils.equals(mediaId, mNextMediaId)) {
+                hasNext = true;
+            } else {
+                staleItemIds.add(queueItem.getItemId());
+            }
+        }
+        if (!hasCurrent) {
+            // The receiver is still loading the current item, try again on the next update.
+            return;
+        }
+
+        if (!staleItemIds.isEmpty()) {
+            int[] itemIds = new int[staleItemIds.size()];
+            for (int i = 0; i < itemIds.length; i++) {
+                itemIds[i] = staleItemIds.get(i);
+            }
+            mRemoteMediaClient.queueRemoveItems(itemIds, null);
+        }
+        if (hasNext) {
+            mPendingAppendMediaId = null;
+        } else if (mNextMediaId != null && !mNextMediaId.equals(mPendingAppendMediaId)) {
+            try {
+                MediaInfo media = getMediaInfo(mNextMediaId);
+                if (media == null) {
+                    return;
+                }
+                MediaQueueItem queueItem = new MediaQueueItem.Builder(media)
+                        .setAutoplay(true)
+                        .setPreloadTime(PRELOAD_TIME_SECONDS)
+                        .build();
+                mPendingAppendMediaId = mNextMediaId;
+                mRemoteMediaClient.queueAppendItem(queueItem, null);
+            } catch (JSONException e) {
+                LogHelper.e(TAG, e, "Exception queuing next item");
+            }
+        }
+    }
+
+    /**
+     * Returns the MediaInfo sent to the receiver for the given mediaId, reusing the one built
+     * previously if the catalog hasn't changed since. The mediaId, and not only the music ID,
+     * is the key since it is part of the custom data.
+     *
+     * @return the MediaInfo, or null if the mediaId doesn't match any track.
+     */
+    private MediaInfo getMediaInfo(String mediaId) throws JSONException {
+        int catalogVersion = mMusicProvider.getCatalogVersion();
+        if (catalogVersion != mMediaInfoCacheVersion) {
+            mMediaInfoCache.evictAll();
+            mMediaInfoCacheVersion = catalogVersion;
+        }
+        MediaInfo media = mMediaInfoCache.get(mediaId);
+        if (media != null) {
+            PerfMetrics.increment(PerfMetrics.COUNTER_CAST_MEDIA_INFO_HIT);
+            return media;
+        }
+        PerfMetrics.increment(PerfMetrics.COUNTER_CAST_MEDIA_INFO_MISS);
+        MediaMetadataCompat track = mMusicProvider.getMusic(
+                MediaIDHelper.extractMusicIDFromMediaID(mediaId));
+        if (track == null) {
+            return null;
+        }
         JSONObject customData = new JSONObject();
         customData.put(ITEM_ID, mediaId);
-        MediaInfo media = toCastMediaMetadata(track, customData);
-        mRemoteMediaClient.load(media, autoPlay, mCurrentPosition, customData);
+        media = toCastMediaMetadata(track, customData);
+        mMediaInfoCache.put(mediaId, media);
+        return media;
+    }
+
+    private int findRemoteItemId(String mediaId) {
+        MediaStatus status = mRemoteMediaClient.getMediaStatus();
+        if (status != null && mediaId != null) {
+            for (MediaQueueItem queueItem : status.getQueueItems()) {
+                if (mediaId.equals(getMediaId(queueItem.getMedia()))) {
+                    return queueItem.getItemId();
+                }
+            }
+        }
+        return MediaQueueItem.INVALID_ITEM_ID;
+    }
+
+    /**
+     * @return the local mediaId stored in the custom data of the given remote media, if any.
+     */
+    private static String getMediaId(MediaInfo mediaInfo) {
+        JSONObject customData = mediaInfo == null ? null : mediaInfo.getCustomData();
+        return customData == null ? null : customData.optString(ITEM_ID, null);
     }
 
     /**
@@ -259,7 +422,16 @@ public class CastPlayback implements Playback {
 
             if (customData != null && customData.has(ITEM_ID)) {
                 String remoteMediaId = customData.getString(ITEM_ID);
-                if (!TextUtils.equals(mCurrentMediaId, remoteMediaId)) {
+                if (mNextMediaId != null && TextUtils.equals(mNextMediaId, remoteMediaId)) {
+                    // The receiver moved on to the preloaded item. As far as the rest of the
+                    // app is concerned, the current song has completed.
+                    mCurrentMediaId = remoteMediaId;
+                    mNextMediaId = null;
+                    mCurrentPosition = 0;
+                    if (mCallback != null) {
+                        mCallback.onCompletion();
+                    }
+                } else if (!TextUtils.equals(mCurrentMediaId, remoteMediaId)) {
                     mCurrentMediaId = remoteMediaId;
                     if (mCallback != null) {
                         mCallback.setCurrentMediaId(remoteMediaId);
@@ -295,6 +467,10 @@ public class CastPlayback implements Playback {
                 }
                 break;
             case MediaStatus.PLAYER_STATE_PLAYING:
+                if (mLoadStartTime >= 0) {
+                    PerfMetrics.endSpan(PerfMetrics.SPAN_CAST_LOAD, mLoadStartTime);
+                    mLoadStartTime = -1;
+                }
                 mPlaybackState = PlaybackStateCompat.STATE_PLAYING;
                 setMetadataFromRemote();
                 if (mCallback != null) {
@@ -338,6 +514,8 @@ public class CastPlayback implements Playback {
 
         @Override
         public void onQueueStatusUpdated() {
+            LogHelper.d(TAG, "RemoteMediaClient.onQueueStatusUpdated");
+            syncRemoteQueue();
         }
 
         @Override
@@ -20,7 +20,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.media.AudioManager;
-import android.net.Uri;
 import android.net.wifi.WifiManager;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
@@ -30,9 +29,10 @@ import android.util.Log;
 import com.example.android.uamp.MusicService;
 import com.example.android.uamp.model.MusicProvider;
 import com.example.android.uamp.model.MusicProviderSource;
+import com.example.android.uamp.model.TrackDownloader;
 import com.example.android.uamp.utils.LogHelper;
 import com.example.android.uamp.utils.MediaIDHelper;
-import com.google.android.exoplayer2.DefaultLoadControl;
+import com.example.android.uamp.utils.PerfMetrics;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayerFactory;
@@ -41,16 +41,13 @@ import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.audio.AudioAttributes;
-import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
-import com.google.android.exoplayer2.extractor.ExtractorsFactory;
-import com.google.android.exoplayer2.source.ExtractorMediaSource;
+import com.google.android.exoplayer2.source.DynamicConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
-import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.util.Util;
+
+import java.io.File;
 
 import static android.support.v4.media.session.MediaSessionCompat.QueueItem;
 import static com.google.android.exoplayer2.C.CONTENT_TYPE_MUSIC;
@@ -70,6 +67,16 @@ public final class LocalPlayback implements Playback {
     // The volume we set the media player when we have audio focus.
     public static final float VOLUME_NORMAL = 1.0f;
 
+    // Android "O" makes much greater use of AudioAttributes, especially
+    // with regards to AudioFocus. All of UAMP's tracks are music, but
+    // if your content includes spoken word such as audiobooks or podcasts
+    // then the content type should be set to CONTENT_TYPE_SPEECH for those
+    // tracks.
+    private static final AudioAttributes AUDIO_ATTRIBUTES = new AudioAttributes.Builder()
+            .setContentType(CONTENT_TYPE_MUSIC)
+            .setUsage(USAGE_MEDIA)
+            .build();
+
     // we don't have audio focus, and can't duck (play at a low volume)
     private static final int AUDIO_NO_FOCUS_NO_DUCK = 0;
     // we don't have focus, but can duck (play at a low volume)
@@ -82,14 +89,37 @@ public final class LocalPlayback implements Playback {
     private boolean mPlayOnFocusGain;
     private Callback mCallback;
     private final MusicProvider mMusicProvider;
+    private final PlaybackPipeline mPipeline;
+    private final TrackDownloader mTrackDownloader;
     private boolean mAudioNoisyReceiverRegistered;
     private String mCurrentMediaId;
 
     private int mCurrentAudioFocusState = AUDIO_NO_FOCUS_NO_DUCK;
     private final AudioManager mAudioManager;
     private SimpleExoPlayer mExoPlayer;
+    // The policy mExoPlayer was created with.
+    private BufferingPolicy mBufferingPolicy;
     private final ExoPlayerEventListener mEventListener = new ExoPlayerEventListener();
 
+    // The current track followed by the pre-buffered next one (if any). Keeping both in one
+    // source lets ExoPlayer move between them without a new prepare, giving gapless playback.
+    private DynamicConcatenatingMediaSource mConcatenatedSource;
+    private String mNextMediaId;
+    // Whether the current and next sources play downloaded files, so no Wifi lock is needed.
+    private boolean mCurrentSourceIsLocal;
+    private boolean mNextSourceIsLocal;
+    // Where to start the current item once the player is created, or -1. Seeking without a
+    // player only records the position, so nothing is buffered until something plays.
+    private long mPendingSeekPosition = -1;
+
+    // When the current track was requested (see PerfMetrics.now()), used to measure the time to
+    // first audio. A negative value means there is no pending measurement.
+    private long mPlayRequestTime = -1;
+    // Last state reported by the player, and whether a seek is in progress, used to tell
+    // rebuffering apart from the buffering that follows a seek.
+    private int mLastPlayerState = Player.STATE_IDLE;
+    private boolean mSeekPending;
+
     // Whether to return STATE_NONE or STATE_STOPPED when mExoPlayer is null;
     private boolean mExoPlayerNullIsStopped =  false;
 
@@ -116,6 +146,8 @@ public final class LocalPlayback implements Playback {
         Context applicationContext = context.getApplicationContext();
         this.mContext = applicationContext;
         this.mMusicProvider = musicProvider;
+        this.mPipeline = PlaybackPipeline.getInstance(applicationContext);
+        this.mTrackDownloader = TrackDownloader.getInstance(applicationContext);
 
         this.mAudioManager =
                 (AudioManager) applicationContext.getSystemService(Context.AUDIO_SERVICE);
@@ -134,6 +166,7 @@ public final class LocalPlayback implements Playback {
     public void stop(boolean notifyListeners) {
         giveUpAudioFocus();
         unregisterAudioNoisyReceiver();
+        mPendingSeekPosition = -1;
         releaseResources(true);
     }
 
@@ -145,6 +178,10 @@ public final class LocalPlayback implements Playback {
     @Override
     public int getState() {
         if (mExoPlayer == null) {
+            if (mPendingSeekPosition >= 0 && mCurrentMediaId != null) {
+                // Ready to start from the pending position.
+                return PlaybackStateCompat.STATE_PAUSED;
+            }
             return mExoPlayerNullIsStopped
                     ? PlaybackStateCompat.STATE_STOPPED
                     : PlaybackStateCompat.STATE_NONE;
@@ -177,7 +214,10 @@ public final class LocalPlayback implements Playback {
 
     @Override
     public long getCurrentStreamPosition() {
-        return mExoPlayer != null ? mExoPlayer.getCurrentPosition() : 0;
+        if (mExoPlayer == null) {
+            return Math.max(mPendingSeekPosition, 0);
+        }
+        return mExoPlayer.getCurrentPosition();
     }
 
     @Override
@@ -194,59 +234,33 @@ public final class LocalPlayback implements Playback {
         boolean mediaHasChanged = !TextUtils.equals(mediaId, mCurrentMediaId);
         if (mediaHasChanged) {
             mCurrentMediaId = mediaId;
+            mPendingSeekPosition = -1;
         }
 
-        if (mediaHasChanged || mExoPlayer == null) {
-            releaseResources(false); // release everything except the player
-            MediaMetadataCompat track =
-                    mMusicProvider.getMusic(
-                            MediaIDHelper.extractMusicIDFromMediaID(
-                                    item.getDescription().getMediaId()));
-
-            String source = track.getString(MusicProviderSource.CUSTOM_METADATA_TRACK_SOURCE);
-            if (source != null) {
-                source = source.replaceAll(" ", "%20"); // Escape spaces for URLs
+        if (mediaHasChanged && canSkipToNextSource(mediaId)) {
+            // The requested item is already prepared right after the current one, so we can
+            // just move the player to it instead of rebuilding the whole pipeline.
+            mPlayRequestTime = PerfMetrics.now();
+            mSeekPending = true;
+            mExoPlayer.seekToDefaultPosition(1);
+            onAdvancedToNextSource();
+        } else if (mediaHasChanged || mExoPlayer == null) {
+            long requestTime = PerfMetrics.now();
+            if (!preparePlayer(mediaId)) {
+                return;
             }
-
-            if (mExoPlayer == null) {
-                mExoPlayer = ExoPlayerFactory.newSimpleInstance(
-                        new DefaultRenderersFactory(mContext),
-                        new DefaultTrackSelector(),
-                        new DefaultLoadControl());
-                mExoPlayer.addListener(mEventListener);
+            mPlayRequestTime = requestTime;
+            if (mPendingSeekPosition >= 0) {
+                mSeekPending = true;
+                mExoPlayer.seekTo(mPendingSeekPosition);
+                mPendingSeekPosition = -1;
             }
+        }
 
-            // Android "O" makes much greater use of AudioAttributes, especially
-            // with regards to AudioFocus. All of UAMP's tracks are music, but
-            // if your content includes spoken word such as audiobooks or podcasts
-            // then the content type should be set to CONTENT_TYPE_SPEECH for those
-            // tracks.
-            final AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                    .setContentType(CONTENT_TYPE_MUSIC)
-                    .setUsage(USAGE_MEDIA)
-                    .build();
-            mExoPlayer.setAudioAttributes(audioAttributes);
-
-            // Produces DataSource instances through which media data is loaded.
-            DataSource.Factory dataSourceFactory =
-                    new DefaultDataSourceFactory(
-                            mContext, Util.getUserAgent(mContext, "uamp"), null);
-            // Produces Extractor instances for parsing the media data.
-            ExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
-            // The MediaSource represents the media to be played.
-            ExtractorMediaSource.Factory extractorMediaFactory =
-                    new ExtractorMediaSource.Factory(dataSourceFactory);
-            extractorMediaFactory.setExtractorsFactory(extractorsFactory);
-            MediaSource mediaSource =
-                    extractorMediaFactory.createMediaSource(Uri.parse(source));
-
-            // Prepares media to play (happens on background thread) and triggers
-            // {@code onPlayerStateChanged} callback when the stream is ready to play.
-            mExoPlayer.prepare(mediaSource);
-
-            // If we are streaming from the internet, we want to hold a
-            // Wifi lock, which prevents the Wifi radio from going to
-            // sleep while the song is playing.
+        // If we are streaming from the internet, we want to hold a
+        // Wifi lock, which prevents the Wifi radio from going to
+        // sleep while the song is playing. Also after a pause, which releases it.
+        if (!mCurrentSourceIsLocal && !mWifiLock.isHeld()) {
             mWifiLock.acquire();
         }
 
@@ -269,7 +283,36 @@ public final class LocalPlayback implements Playback {
         LogHelper.d(TAG, "seekTo called with ", position);
         if (mExoPlayer != null) {
             registerAudioNoisyReceiver();
+            mSeekPending = true;
             mExoPlayer.seekTo(position);
+        } else {
+            // Applied by play(), when switching from Cast or resuming what a previous service
+            // was playing.
+            mPendingSeekPosition = position;
+        }
+    }
+
+    @Override
+    public void setNextQueueItem(QueueItem item) {
+        String mediaId = item == null ? null : item.getDescription().getMediaId();
+        if (mConcatenatedSource == null || TextUtils.equals(mediaId, mNextMediaId)) {
+            return;
+        }
+        if (mNextMediaId != null) {
+            mConcatenatedSource.removeMediaSource(1);
+            mNextMediaId = null;
+        }
+        // A queue with a single item cycles onto itself; there is nothing to pre-buffer then.
+        if (mediaId == null || TextUtils.equals(mediaId, mCurrentMediaId)) {
+            return;
+        }
+        File localFile = getLocalFile(mediaId);
+        MediaSource mediaSource = createMediaSource(mediaId, localFile);
+        if (mediaSource != null) {
+            LogHelper.d(TAG, "Pre-buffering next item ", mediaId);
+            mConcatenatedSource.addMediaSource(mediaSource);
+            mNextMediaId = mediaId;
+            mNextSourceIsLocal = localFile != null;
         }
     }
 
@@ -288,6 +331,106 @@ public final class LocalPlayback implements Playback {
         return mCurrentMediaId;
     }
 
+    /**
+     * Prepares the player for the track of the given hierarchy-aware mediaId, creating the
+     * player if needed. Whether it plays once ready is left as it was.
+     *
+     * @return false if the track is not known, after reporting the error
+     */
+    private boolean preparePlayer(String mediaId) {
+        releaseResources(false); // release everything except the player
+        File localFile = getLocalFile(mediaId);
+        MediaSource mediaSource = createMediaSource(mediaId, localFile);
+        if (mediaSource == null) {
+            if (mCallback != null) {
+                mCallback.onError("Invalid mediaId " + mediaId);
+            }
+            return false;
+        }
+
+        BufferingPolicy policy = BufferingPolicy.getCurrent(mContext, mPipeline);
+        if (mExoPlayer != null && !policy.equals(mBufferingPolicy)) {
+            // The network changed since the player was created. The track is prepared from
+            // scratch anyway, so a player with fitting buffers costs nothing more here.
+            LogHelper.d(TAG, "Buffering policy changed, creating a new player");
+            mExoPlayer.removeListener(mEventListener);
+            mExoPlayer.release();
+            mExoPlayer = null;
+            mLastPlayerState = Player.STATE_IDLE;
+            mSeekPending = false;
+        }
+        if (mExoPlayer == null) {
+            mBufferingPolicy = policy;
+            mExoPlayer = ExoPlayerFactory.newSimpleInstance(
+                    new DefaultRenderersFactory(mContext),
+                    new DefaultTrackSelector(),
+                    policy.createLoadControl());
+            mExoPlayer.addListener(mEventListener);
+            mExoPlayer.setAudioAttributes(AUDIO_ATTRIBUTES);
+        }
+
+        // The current track goes first, and the next one is appended later by
+        // setNextQueueItem, so the player can buffer it while this one is still playing.
+        mConcatenatedSource = new DynamicConcatenatingMediaSource();
+        mConcatenatedSource.addMediaSource(mediaSource);
+        mNextMediaId = null;
+        mCurrentSourceIsLocal = localFile != null;
+
+        // Prepares media to play (happens on background thread) and triggers
+        // {@code onPlayerStateChanged} callback when the stream is ready to play.
+        mExoPlayer.prepare(mConcatenatedSource);
+        return true;
+    }
+
+    /**
+     * @return the downloaded file of the track of the given hierarchy-aware mediaId, or null.
+     */
+    private File getLocalFile(String mediaId) {
+        return mTrackDownloader.getLocalFile(MediaIDHelper.extractMusicIDFromMediaID(mediaId));
+    }
+
+    /**
+     * Creates the {@link MediaSource} that plays the track of the given hierarchy-aware
+     * mediaId, or returns null if the track is not known by the {@link MusicProvider}.
+     * Downloaded tracks, given by their local file, are played from it instead of being
+     * streamed.
+     */
+    private MediaSource createMediaSource(String mediaId, File localFile) {
+        if (localFile != null) {
+            return mPipeline.createLocalMediaSource(localFile);
+        }
+        String musicId = MediaIDHelper.extractMusicIDFromMediaID(mediaId);
+        MediaMetadataCompat track = mMusicProvider.getMusic(musicId);
+        if (track == null) {
+            LogHelper.w(TAG, "Could not find track for mediaId ", mediaId);
+            return null;
+        }
+        return mPipeline.createMediaSource(
+                track.getString(MusicProviderSource.CUSTOM_METADATA_TRACK_SOURCE));
+    }
+
+    /**
+     * @return true if the given mediaId is the pre-buffered item that follows the current one
+     * and the player already knows about it.
+     */
+    private boolean canSkipToNextSource(String mediaId) {
+        return mExoPlayer != null
+                && mNextMediaId != null
+                && TextUtils.equals(mediaId, mNextMediaId)
+                && mExoPlayer.getCurrentTimeline().getWindowCount() > 1;
+    }
+
+    /**
+     * Drops the finished source from the front of the concatenation, so the item that just
+     * started playing becomes the current one and a new next item can be appended.
+     */
+    private void onAdvancedToNextSource() {
+        mConcatenatedSource.removeMediaSource(0);
+        mCurrentMediaId = mNextMediaId;
+        mCurrentSourceIsLocal = mNextSourceIsLocal;
+        mNextMediaId = null;
+    }
+
     private void tryToGetAudioFocus() {
         LogHelper.d(TAG, "tryToGetAudioFocus");
         int result =
@@ -387,6 +530,10 @@ public final class LocalPlayback implements Playback {
             mExoPlayer.release();
             mExoPlayer.removeListener(mEventListener);
             mExoPlayer = null;
+            mConcatenatedSource = null;
+            mNextMediaId = null;
+            mLastPlayerState = Player.STATE_IDLE;
+            mSeekPending = false;
             mExoPlayerNullIsStopped = true;
             mPlayOnFocusGain = false;
         }
@@ -429,6 +576,15 @@ public final class LocalPlayback implements Playback {
 
         @Override
         public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+            if (playbackState == Player.STATE_READY && mPlayRequestTime >= 0) {
+                recordTimeToFirstAudio();
+            }
+            if (playbackState == Player.STATE_BUFFERING && mLastPlayerState == Player.STATE_READY
+                    && playWhenReady && !mSeekPending) {
+                mPipeline.recordRebuffer();
+                PerfMetrics.increment(PerfMetrics.COUNTER_LOCAL_REBUFFER);
+            }
+            mLastPlayerState = playbackState;
             switch (playbackState) {
                 case Player.STATE_IDLE:
                 case Player.STATE_BUFFERING:
@@ -471,7 +627,14 @@ public final class LocalPlayback implements Playback {
 
         @Override
         public void onPositionDiscontinuity(int reason) {
-            // Nothing to do.
+            if (reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION && mNextMediaId != null) {
+                // The player moved on to the pre-buffered item by itself. As far as the rest
+                // of the app is concerned the current song has completed.
+                onAdvancedToNextSource();
+                if (mCallback != null) {
+                    mCallback.onCompletion();
+                }
+            }
         }
 
         @Override
@@ -481,7 +644,19 @@ public final class LocalPlayback implements Playback {
 
         @Override
         public void onSeekProcessed() {
-            // Nothing to do.
+            mSeekPending = false;
+            // Skipping to a pre-buffered item may not go through buffering at all.
+            if (mPlayRequestTime >= 0 && mExoPlayer != null
+                    && mExoPlayer.getPlaybackState() == Player.STATE_READY) {
+                recordTimeToFirstAudio();
+            }
+        }
+
+        private void recordTimeToFirstAudio() {
+            long durationNanos = PerfMetrics.now() - mPlayRequestTime;
+            PerfMetrics.recordDuration(PerfMetrics.SPAN_LOCAL_FIRST_AUDIO, durationNanos);
+            mPipeline.recordTimeToFirstAudio(durationNanos / 1000000);
+            mPlayRequestTime = -1;
         }
 
         @Override
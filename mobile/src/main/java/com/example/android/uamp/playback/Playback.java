@@ -77,6 +77,14 @@ public interface Playback {
 
     void seekTo(long position);
 
+    /**
+     * Hints which item is expected to play after the current one, so implementations can
+     * prepare and buffer it ahead of time for a gapless transition.
+     *
+     * @param item the upcoming queue item, or null if nothing is expected to follow.
+     */
+    void setNextQueueItem(QueueItem item);
+
     void setCurrentMediaId(String mediaId);
 
     String getCurrentMediaId();
@@ -28,6 +28,7 @@ import com.example.android.uamp.R;
 import com.example.android.uamp.model.MusicProvider;
 import com.example.android.uamp.utils.LogHelper;
 import com.example.android.uamp.utils.MediaIDHelper;
+import com.example.android.uamp.utils.PerfMetrics;
 import com.example.android.uamp.utils.WearHelper;
 
 /**
@@ -46,6 +47,10 @@ public class PlaybackManager implements Playback.Callback {
     private Playback mPlayback;
     private PlaybackServiceCallback mServiceCallback;
     private MediaSessionCallback mMediaSessionCallback;
+    private final PlaybackStatePublisher mStatePublisher;
+    // The favorite custom actions don't change, so they are only built once.
+    private PlaybackStateCompat.CustomAction mFavoriteOnAction;
+    private PlaybackStateCompat.CustomAction mFavoriteOffAction;
 
     public PlaybackManager(PlaybackServiceCallback serviceCallback, Resources resources,
                            MusicProvider musicProvider, QueueManager queueManager,
@@ -55,6 +60,12 @@ public class PlaybackManager implements Playback.Callback {
         mResources = resources;
         mQueueManager = queueManager;
         mMediaSessionCallback = new MediaSessionCallback();
+        mStatePublisher = new PlaybackStatePublisher(new PlaybackStatePublisher.StateSource() {
+            @Override
+            public PlaybackStateCompat buildPlaybackState(String error) {
+                return PlaybackManager.this.buildPlaybackState(error);
+            }
+        }, serviceCallback);
         mPlayback = playback;
         mPlayback.setCallback(this);
     }
@@ -71,12 +82,29 @@ public class PlaybackManager implements Playback.Callback {
      * Handle a request to play music
      */
     public void handlePlayRequest() {
-        LogHelper.d(TAG, "handlePlayRequest: mState=" + mPlayback.getState());
+        LogHelper.d(TAG, "handlePlayRequest: mState=", mPlayback.getState());
+        long start = PerfMetrics.now();
         MediaSessionCompat.QueueItem currentMusic = mQueueManager.getCurrentMusic();
         if (currentMusic != null) {
             mServiceCallback.onPlaybackStart();
             mPlayback.play(currentMusic);
+            mPlayback.setNextQueueItem(mQueueManager.getNextMusic());
+            PerfMetrics.endSpan(PerfMetrics.SPAN_HANDLE_PLAY, start);
+        }
+    }
+
+    /**
+     * Shows the current queue item as paused at the given position, to resume what a previous
+     * service was playing. Nothing is buffered until it's played.
+     */
+    public void handleRestoreRequest(long position) {
+        MediaSessionCompat.QueueItem currentMusic = mQueueManager.getCurrentMusic();
+        if (currentMusic == null) {
+            return;
         }
+        mPlayback.setCurrentMediaId(currentMusic.getDescription().getMediaId());
+        mPlayback.seekTo(position);
+        updatePlaybackState(null);
     }
 
     /**
@@ -84,7 +112,7 @@ public class PlaybackManager implements Playback.Callback {
      * 暂停音乐播放
      */
     public void handlePauseRequest() {
-        LogHelper.d(TAG, "handlePauseRequest: mState=" + mPlayback.getState());
+        LogHelper.d(TAG, "handlePauseRequest: mState=", mPlayback.getState());
         if (mPlayback.isPlaying()) {//正在播放
             mPlayback.pause();//暂停播放--播放管理类
             mServiceCallback.onPlaybackStop();//通知播放服务
@@ -101,7 +129,10 @@ public class PlaybackManager implements Playback.Callback {
      *                  错误消息将在播放状态中设置，并且对媒体控制器客户端可见。
      */
     public void handleStopRequest(String withError) {
-        LogHelper.d(TAG, "handleStopRequest: mState=" + mPlayback.getState() + " error=", withError);
+        if (LogHelper.isDebugEnabled(TAG)) {
+            LogHelper.d(TAG, "handleStopRequest: mState=", mPlayback.getState(), " error=",
+                    withError);
+        }
         mPlayback.stop(true);
         mServiceCallback.onPlaybackStop();
         updatePlaybackState(withError);//停止播放,更新状态
@@ -111,10 +142,23 @@ public class PlaybackManager implements Playback.Callback {
     /**
      * Update the current media player state, optionally showing an error message.
      *更新当前媒体播放器状态，可选择显示错误消息。
+     * The state is published asynchronously, after coalescing the updates requested within
+     * the same frame, and only if it changed.
      * @param error if not null, error message to present to the user.
      */
     public void updatePlaybackState(String error) {
-        LogHelper.d(TAG, "updatePlaybackState, playback state=" + mPlayback.getState());
+        LogHelper.d(TAG, "updatePlaybackState, playback state=", mPlayback.getState());
+        mStatePublisher.requestUpdate(error);
+    }
+
+    /**
+     * Stops publishing playback states, before the media session is released.
+     */
+    public void release() {
+        mStatePublisher.release();
+    }
+
+    private PlaybackStateCompat buildPlaybackState(String error) {
         long position = PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN;
         if (mPlayback != null && mPlayback.isConnected()) {
             position = mPlayback.getCurrentStreamPosition();
@@ -143,12 +187,7 @@ public class PlaybackManager implements Playback.Callback {
             stateBuilder.setActiveQueueItemId(currentMusic.getQueueId());
         }
 
-        mServiceCallback.onPlaybackStateUpdated(stateBuilder.build());
-
-        if (state == PlaybackStateCompat.STATE_PLAYING ||
-                state == PlaybackStateCompat.STATE_PAUSED) {
-            mServiceCallback.onNotificationRequired();
-        }
+        return stateBuilder.build();
     }
 
     private void setCustomAction(PlaybackStateCompat.Builder stateBuilder) {
@@ -162,16 +201,25 @@ public class PlaybackManager implements Playback.Callback {
             return;
         }
         String musicId = MediaIDHelper.extractMusicIDFromMediaID(mediaId);
-        int favoriteIcon = mMusicProvider.isFavorite(musicId) ?
-                R.drawable.ic_star_on : R.drawable.ic_star_off;
-        LogHelper.d(TAG, "updatePlaybackState, setting Favorite custom action of music ",
-                musicId, " current favorite=", mMusicProvider.isFavorite(musicId));
+        boolean favorite = mMusicProvider.isFavorite(musicId);
+        if (LogHelper.isDebugEnabled(TAG)) {
+            LogHelper.d(TAG, "updatePlaybackState, setting Favorite custom action of music ",
+                    musicId, " current favorite=", favorite);
+        }
+        if (mFavoriteOnAction == null) {
+            mFavoriteOnAction = createFavoriteAction(R.drawable.ic_star_on);
+            mFavoriteOffAction = createFavoriteAction(R.drawable.ic_star_off);
+        }
+        stateBuilder.addCustomAction(favorite ? mFavoriteOnAction : mFavoriteOffAction);
+    }
+
+    private PlaybackStateCompat.CustomAction createFavoriteAction(int icon) {
         Bundle customActionExtras = new Bundle();
         WearHelper.setShowCustomActionOnWear(customActionExtras, true);
-        stateBuilder.addCustomAction(new PlaybackStateCompat.CustomAction.Builder(
-                CUSTOM_ACTION_THUMBS_UP, mResources.getString(R.string.favorite), favoriteIcon)
+        return new PlaybackStateCompat.CustomAction.Builder(
+                CUSTOM_ACTION_THUMBS_UP, mResources.getString(R.string.favorite), icon)
                 .setExtras(customActionExtras)
-                .build());
+                .build();
     }
 
     private long getAvailableActions() {
@@ -252,6 +300,7 @@ public class PlaybackManager implements Playback.Callback {
                 MediaSessionCompat.QueueItem currentMusic = mQueueManager.getCurrentMusic();
                 if (resumePlaying && currentMusic != null) {
                     mPlayback.play(currentMusic);
+                    mPlayback.setNextQueueItem(mQueueManager.getNextMusic());
                 } else if (!resumePlaying) {
                     mPlayback.pause();
                 } else {
@@ -278,7 +327,7 @@ public class PlaybackManager implements Playback.Callback {
 
         @Override
         public void onSkipToQueueItem(long queueId) {
-            LogHelper.d(TAG, "OnSkipToQueueItem:" + queueId);
+            LogHelper.d(TAG, "OnSkipToQueueItem:", queueId);
             mQueueManager.setCurrentQueueItem(queueId);
             mQueueManager.updateMetadata();
         }
@@ -298,13 +347,13 @@ public class PlaybackManager implements Playback.Callback {
 
         @Override
         public void onPause() {
-            LogHelper.d(TAG, "pause. current state=" + mPlayback.getState());
+            LogHelper.d(TAG, "pause. current state=", mPlayback.getState());
             handlePauseRequest();
         }
 
         @Override
         public void onStop() {
-            LogHelper.d(TAG, "stop. current state=" + mPlayback.getState());
+            LogHelper.d(TAG, "stop. current state=", mPlayback.getState());
             handleStopRequest(null);
         }
 
@@ -339,6 +388,7 @@ public class PlaybackManager implements Playback.Callback {
                     if (mediaId != null) {
                         String musicId = MediaIDHelper.extractMusicIDFromMediaID(mediaId);
                         mMusicProvider.setFavorite(musicId, !mMusicProvider.isFavorite(musicId));
+                        mServiceCallback.onFavoritesChanged();
                     }
                 }
                 // playback state needs to be updated because the "Favorite" icon on the
@@ -396,5 +446,8 @@ public class PlaybackManager implements Playback.Callback {
         void onPlaybackStop();
 
         void onPlaybackStateUpdated(PlaybackStateCompat newState);
+
+        /**The favorite tracks changed, so the favorites category did too*/
+        void onFavoritesChanged();
     }
 }
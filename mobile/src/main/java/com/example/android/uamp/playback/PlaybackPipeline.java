@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+
+import com.example.android.uamp.utils.LogHelper;
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.source.ExtractorMediaSource;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSinkFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the long-lived factories that turn track URLs into ExoPlayer media sources.
+ *
+ * They are created once per process and shared by every {@link LocalPlayback} instance (a new
+ * one is created each time a cast session ends), so starting a track doesn't pay for setting
+ * them up again. All HTTP requests also go through the same data source factory, which lets
+ * the platform HttpURLConnection pool reuse kept-alive connections to the media server
+ * instead of doing a new TCP/TLS handshake for every song.
+ *
+ * Streamed media goes through a bounded, least recently used on-disk cache, so replaying a
+ * track or seeking back within it is served locally instead of from the network. Tracks that
+ * were downloaded with {@link com.example.android.uamp.model.TrackDownloader} are played
+ * straight from their file. The cache reads its index from disk when it's created, so that
+ * happens in the background, and the first track to play waits for it if needed.
+ */
+public final class PlaybackPipeline {
+
+    private static final String TAG = LogHelper.makeLogTag(PlaybackPipeline.class);
+
+    private static final String MEDIA_CACHE_DIR = "media";
+    private static final long MAX_MEDIA_CACHE_SIZE = 100 * 1024 * 1024;  // 100 MB
+    // How long a rebuffer counts for BufferingPolicy.
+    private static final long RECENT_REBUFFER_WINDOW_MS = 10 * 60 * 1000;
+
+    private static PlaybackPipeline sInstance;
+
+    private final DataSource.Factory mUpstreamFactory;
+    private final FutureTask<Cache> mCache;
+    // Created with the first streamed track, once the cache is ready.
+    private ExtractorMediaSource.Factory mExtractorMediaFactory;
+    private final ExtractorMediaSource.Factory mLocalMediaFactory;
+    // Estimates the network bandwidth from the media downloads, for BufferingPolicy.
+    private final DefaultBandwidthMeter mBandwidthMeter = new DefaultBandwidthMeter();
+
+    // Bytes served from the on-disk cache and from the network, respectively.
+    private final AtomicLong mCacheHitBytes = new AtomicLong();
+    private final AtomicLong mNetworkBytes = new AtomicLong();
+
+    // Time-to-first-audio statistics, in milliseconds.
+    private long mTimeToFirstAudioCount;
+    private long mTimeToFirstAudioTotalMs;
+    private long mLastTimeToFirstAudioMs = -1;
+    // Times playback stalled to rebuffer, after having started.
+    private final RebufferHistory mRebuffers = new RebufferHistory(RECENT_REBUFFER_WINDOW_MS);
+
+    public static synchronized PlaybackPipeline getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PlaybackPipeline(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PlaybackPipeline(final Context context) {
+        // Follow http -> https redirects too, since they would otherwise fail the track.
+        DataSource.Factory httpDataSourceFactory = new DefaultHttpDataSourceFactory(
+                Util.getUserAgent(context, "uamp"), mNetworkTransferListener,
+                DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, true);
+        // Produces DataSource instances through which media data is loaded. Non-HTTP URIs
+        // (files, assets, content://) are handled as well.
+        mUpstreamFactory = new DefaultDataSourceFactory(context, null, httpDataSourceFactory);
+
+        mCache = new FutureTask<>(new Callable<Cache>() {
+            @Override
+            public Cache call() {
+                // The cache may be bigger than what's left on the device, so bound it by free
+                // space too.
+                File cacheDir = new File(context.getCacheDir(), MEDIA_CACHE_DIR);
+                long maxCacheSize = Math.min(MAX_MEDIA_CACHE_SIZE,
+                        context.getCacheDir().getUsableSpace() / 4);
+                return new SimpleCache(cacheDir,
+                        new LeastRecentlyUsedCacheEvictor(maxCacheSize));
+            }
+        });
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(mCache);
+
+        // Local files don't need to go through the cache.
+        mLocalMediaFactory = new ExtractorMediaSource.Factory(new FileDataSourceFactory())
+                .setExtractorsFactory(new DefaultExtractorsFactory());
+    }
+
+    /**
+     * Creates the {@link MediaSource} that plays the given track source URL.
+     */
+    public MediaSource createMediaSource(String source) {
+        if (source != null) {
+            source = source.replaceAll(" ", "%20"); // Escape spaces for URLs
+        }
+        return getExtractorMediaFactory().createMediaSource(Uri.parse(source));
+    }
+
+    // The factory can create any number of sources once configured, so it's built once.
+    private synchronized ExtractorMediaSource.Factory getExtractorMediaFactory() {
+        if (mExtractorMediaFactory == null) {
+            DataSource.Factory dataSourceFactory = mUpstreamFactory;
+            Cache cache = getCache();
+            if (cache != null) {
+                dataSourceFactory = new CacheDataSourceFactory(cache,
+                        mUpstreamFactory,
+                        new FileDataSourceFactory(),
+                        new CacheDataSinkFactory(cache,
+                                CacheDataSource.DEFAULT_MAX_CACHE_FILE_SIZE),
+                        CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR,
+                        mCacheEventListener);
+            }
+            mExtractorMediaFactory = new ExtractorMediaSource.Factory(dataSourceFactory)
+                    .setExtractorsFactory(new DefaultExtractorsFactory());
+        }
+        return mExtractorMediaFactory;
+    }
+
+    /**
+     * @return the on-disk media cache, waiting for it to be created if needed, or null if it
+     * couldn't be created. Tracks are then streamed without caching.
+     */
+    private Cache getCache() {
+        try {
+            return mCache.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogHelper.e(TAG, e, "Could not create the media cache");
+        }
+        return null;
+    }
+
+    /**
+     * Creates the {@link MediaSource} that plays a downloaded track from its file.
+     */
+    public MediaSource createLocalMediaSource(File file) {
+        return mLocalMediaFactory.createMediaSource(Uri.fromFile(file));
+    }
+
+    /**
+     * @return the number of bytes currently held by the on-disk media cache.
+     */
+    public long getCacheSizeBytes() {
+        // Doesn't wait for the cache: this is for the dump.
+        Cache cache = mCache.isDone() ? getCache() : null;
+        return cache == null ? 0 : cache.getCacheSpace();
+    }
+
+    /**
+     * @return the number of media bytes read from the on-disk cache since the process started.
+     */
+    public long getCacheHitBytes() {
+        return mCacheHitBytes.get();
+    }
+
+    /**
+     * @return the number of media bytes downloaded from the network since the process started.
+     */
+    public long getNetworkBytes() {
+        return mNetworkBytes.get();
+    }
+
+    /**
+     * Records how long it took from asking the player to play a track until it was ready to
+     * output audio.
+     */
+    public synchronized void recordTimeToFirstAudio(long timeMs) {
+        mLastTimeToFirstAudioMs = timeMs;
+        mTimeToFirstAudioTotalMs += timeMs;
+        mTimeToFirstAudioCount++;
+        if (LogHelper.isDebugEnabled(TAG)) {
+            LogHelper.d(TAG, "Time to first audio: ", timeMs, "ms, average: ",
+                    mTimeToFirstAudioTotalMs / mTimeToFirstAudioCount, "ms");
+        }
+    }
+
+    /**
+     * @return the last measured time to first audio in milliseconds, or -1 if none yet.
+     */
+    public synchronized long getLastTimeToFirstAudioMs() {
+        return mLastTimeToFirstAudioMs;
+    }
+
+    /**
+     * @return the average time to first audio in milliseconds, or -1 if none yet.
+     */
+    public synchronized long getAverageTimeToFirstAudioMs() {
+        return mTimeToFirstAudioCount == 0 ? -1 : mTimeToFirstAudioTotalMs / mTimeToFirstAudioCount;
+    }
+
+    /**
+     * @return the estimated network bandwidth in bits per second, or
+     * {@link com.google.android.exoplayer2.upstream.BandwidthMeter#NO_ESTIMATE} if nothing was
+     * downloaded yet.
+     */
+    public long getBandwidthEstimate() {
+        return mBandwidthMeter.getBitrateEstimate();
+    }
+
+    /**
+     * Records that playback stalled because the buffer ran out.
+     */
+    public synchronized void recordRebuffer() {
+        mRebuffers.record(SystemClock.elapsedRealtime());
+        LogHelper.d(TAG, "Rebuffering, count: ", mRebuffers.getTotalCount());
+    }
+
+    /**
+     * @return the number of times playback stalled to rebuffer since the process started.
+     */
+    public synchronized int getRebufferCount() {
+        return mRebuffers.getTotalCount();
+    }
+
+    /**
+     * @return the number of times playback stalled to rebuffer in the last few minutes.
+     */
+    public synchronized int getRecentRebufferCount() {
+        return mRebuffers.getRecentCount(SystemClock.elapsedRealtime());
+    }
+
+    private final CacheDataSource.EventListener mCacheEventListener =
+            new CacheDataSource.EventListener() {
+                @Override
+                public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+                    mCacheHitBytes.addAndGet(cachedBytesRead);
+                }
+            };
+
+    private final TransferListener<DataSource> mNetworkTransferListener =
+            new TransferListener<DataSource>() {
+                @Override
+                public void onTransferStart(DataSource source, DataSpec dataSpec) {
+                    mBandwidthMeter.onTransferStart(source, dataSpec);
+                }
+
+                @Override
+                public void onBytesTransferred(DataSource source, int bytesTransferred) {
+                    mNetworkBytes.addAndGet(bytesTransferred);
+                    mBandwidthMeter.onBytesTransferred(source, bytesTransferred);
+                }
+
+                @Override
+                public void onTransferEnd(DataSource source) {
+                    mBandwidthMeter.onTransferEnd(source);
+                }
+            };
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.TextUtils;
+
+import com.example.android.uamp.utils.LogHelper;
+import com.example.android.uamp.utils.PerfMetrics;
+
+import java.util.List;
+
+/**
+ * Publishes the playback state to the service, and from there to the media session.
+ *
+ * Playbacks report state changes in bursts (buffering, ready, position discontinuities...), and
+ * every published state crosses the Binder boundary to each connected controller. Requests made
+ * within a frame are coalesced into one, and a state is only published when it differs from the
+ * last one in a way controllers can observe.
+ */
+final class PlaybackStatePublisher {
+
+    private static final String TAG = LogHelper.makeLogTag(PlaybackStatePublisher.class);
+
+    // Roughly one frame: controllers can't show anything faster than this anyway.
+    private static final long COALESCE_DELAY_MS = 16;
+    // How far the position may drift from where the last published state extrapolates it to,
+    // before it's worth publishing again.
+    private static final long POSITION_TOLERANCE_MS = 500;
+
+    /**
+     * Builds the state to publish when a coalesced request runs.
+     */
+    interface StateSource {
+        PlaybackStateCompat buildPlaybackState(String error);
+    }
+
+    private final StateSource mStateSource;
+    private final PlaybackManager.PlaybackServiceCallback mServiceCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private PlaybackStateCompat mLastPublishedState;
+    private boolean mUpdatePending;
+    private String mPendingError;
+    private boolean mReleased;
+    // Whether something played since the last stop, so a paused state has a notification.
+    private boolean mStarted;
+
+    PlaybackStatePublisher(StateSource stateSource,
+                           PlaybackManager.PlaybackServiceCallback serviceCallback) {
+        mStateSource = stateSource;
+        mServiceCallback = serviceCallback;
+    }
+
+    /**
+     * Asks for the state to be published shortly. An error given here is kept even if other
+     * requests without one follow within the same frame.
+     */
+    void requestUpdate(String error) {
+        if (error != null) {
+            mPendingError = error;
+        }
+        if (!mUpdatePending && !mReleased) {
+            mUpdatePending = true;
+            mHandler.postDelayed(mPublishRunnable, COALESCE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Drops a pending request and ignores the following ones, before the session is released.
+     */
+    void release() {
+        mReleased = true;
+        mUpdatePending = false;
+        mPendingError = null;
+        mHandler.removeCallbacks(mPublishRunnable);
+    }
+
+    private final Runnable mPublishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            String error = mPendingError;
+            mUpdatePending = false;
+            mPendingError = null;
+            publish(mStateSource.buildPlaybackState(error));
+        }
+    };
+
+    private void publish(PlaybackStateCompat state) {
+        if (isEquivalent(mLastPublishedState, state)) {
+            PerfMetrics.increment(PerfMetrics.COUNTER_STATE_SKIPPED);
+            return;
+        }
+        mLastPublishedState = state;
+        PerfMetrics.increment(PerfMetrics.COUNTER_STATE_PUBLISHED);
+        LogHelper.d(TAG, "Publishing state ", state.getState());
+        mServiceCallback.onPlaybackStateUpdated(state);
+
+        int playbackState = state.getState();
+        if (playbackState == PlaybackStateCompat.STATE_PLAYING) {
+            mStarted = true;
+        } else if (playbackState == PlaybackStateCompat.STATE_STOPPED
+                || playbackState == PlaybackStateCompat.STATE_NONE) {
+            mStarted = false;
+        }
+        // A queue restored from a previous service is paused without having played, and
+        // doesn't show a notification until it plays.
+        if (playbackState == PlaybackStateCompat.STATE_PLAYING ||
+                (playbackState == PlaybackStateCompat.STATE_PAUSED && mStarted)) {
+            mServiceCallback.onNotificationRequired();
+        }
+    }
+
+    private static boolean isEquivalent(PlaybackStateCompat last, PlaybackStateCompat next) {
+        if (last == null
+                || last.getState() != next.getState()
+                || last.getActions() != next.getActions()
+                || last.getActiveQueueItemId() != next.getActiveQueueItemId()
+                || last.getPlaybackSpeed() != next.getPlaybackSpeed()
+                || !TextUtils.equals(last.getErrorMessage(), next.getErrorMessage())
+                || !isSameCustomActions(last.getCustomActions(), next.getCustomActions())) {
+            return false;
+        }
+        // Controllers extrapolate the position while playing, so a new position only matters
+        // if it's not where they think it is.
+        long expectedPosition = last.getPosition();
+        if (last.getState() == PlaybackStateCompat.STATE_PLAYING
+                && expectedPosition != PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN) {
+            expectedPosition += (long) ((next.getLastPositionUpdateTime()
+                    - last.getLastPositionUpdateTime()) * last.getPlaybackSpeed());
+        }
+        return Math.abs(next.getPosition() - expectedPosition) <= POSITION_TOLERANCE_MS;
+    }
+
+    private static boolean isSameCustomActions(List<PlaybackStateCompat.CustomAction> last,
+                                               List<PlaybackStateCompat.CustomAction> next) {
+        if (last.size() != next.size()) {
+            return false;
+        }
+        for (int i = 0; i < last.size(); i++) {
+            if (!TextUtils.equals(last.get(i).getAction(), next.get(i).getAction())
+                    || last.get(i).getIcon() != next.get(i).getIcon()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
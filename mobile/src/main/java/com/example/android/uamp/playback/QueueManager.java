@@ -26,14 +26,18 @@ import android.support.v4.media.session.MediaSessionCompat;
 import com.example.android.uamp.AlbumArtCache;
 import com.example.android.uamp.R;
 import com.example.android.uamp.model.MusicProvider;
+import com.example.android.uamp.utils.LazyQueue;
 import com.example.android.uamp.utils.LogHelper;
 import com.example.android.uamp.utils.MediaIDHelper;
 import com.example.android.uamp.utils.QueueHelper;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_FAVORITES;
 
 /**
  * Simple data provider for queues. Keeps track of a current queue and a current index in the
@@ -52,6 +56,11 @@ public class QueueManager {
     // "Now playing" queue:
     private List<MediaSessionCompat.QueueItem> mPlayingQueue;
     private int mCurrentIndex;
+    private String mQueueTitle;
+    // Positions in mPlayingQueue by queue ID and by mediaId (the first one, if a mediaId is
+    // repeated), so items can be found without scanning long queues. Rebuilt with the queue.
+    private Map<Long, Integer> mIndexByQueueId = Collections.emptyMap();
+    private Map<String, Integer> mIndexByMediaId = Collections.emptyMap();
 
     public QueueManager(@NonNull MusicProvider musicProvider,
                         @NonNull Resources resources,
@@ -65,15 +74,12 @@ public class QueueManager {
     }
 
     public boolean isSameBrowsingCategory(@NonNull String mediaId) {
-        String[] newBrowseHierarchy = MediaIDHelper.getHierarchy(mediaId);
         MediaSessionCompat.QueueItem current = getCurrentMusic();
-        if (current == null) {
+        if (current == null || current.getDescription().getMediaId() == null) {
             return false;
         }
-        String[] currentBrowseHierarchy = MediaIDHelper.getHierarchy(
+        return MediaIDHelper.isSameBrowsingCategory(mediaId,
                 current.getDescription().getMediaId());
-
-        return Arrays.equals(newBrowseHierarchy, currentBrowseHierarchy);
     }
 
     private void setCurrentQueueIndex(int index) {
@@ -85,14 +91,14 @@ public class QueueManager {
 
     public boolean setCurrentQueueItem(long queueId) {
         // set the current index on queue from the queue Id:
-        int index = QueueHelper.getMusicIndexOnQueue(mPlayingQueue, queueId);
+        int index = getIndexOnQueue(queueId);
         setCurrentQueueIndex(index);
         return index >= 0;
     }
 
     public boolean setCurrentQueueItem(String mediaId) {
         // set the current index on queue from the music Id:
-        int index = QueueHelper.getMusicIndexOnQueue(mPlayingQueue, mediaId);
+        int index = getIndexOnQueue(mediaId);
         setCurrentQueueIndex(index);
         return index >= 0;
     }
@@ -142,8 +148,14 @@ public class QueueManager {
             canReuseQueue = setCurrentQueueItem(mediaId);
         }
         if (!canReuseQueue) {
-            String queueTitle = mResources.getString(R.string.browse_musics_by_genre_subtitle,
-                    MediaIDHelper.extractBrowseCategoryValueFromMediaID(mediaId));
+            String[] hierarchy = MediaIDHelper.getHierarchy(mediaId);
+            String queueTitle;
+            if (hierarchy.length == 1 && hierarchy[0].equals(MEDIA_ID_MUSICS_BY_FAVORITES)) {
+                queueTitle = mResources.getString(R.string.browse_favorites);
+            } else {
+                queueTitle = mResources.getString(R.string.browse_musics_by_genre_subtitle,
+                        MediaIDHelper.extractBrowseCategoryValueFromMediaID(mediaId));
+            }
             setCurrentQueue(queueTitle,
                     QueueHelper.getPlayingQueue(mediaId, mMusicProvider), mediaId);
         }
@@ -157,6 +169,25 @@ public class QueueManager {
         return mPlayingQueue.get(mCurrentIndex);
     }
 
+    /**
+     * @return the item that follows the current one, honoring the same wrap-around rule as
+     * {@link #skipQueuePosition(int)}, or null if there is no current item.
+     */
+    public MediaSessionCompat.QueueItem getNextMusic() {
+        if (!QueueHelper.isIndexPlayable(mCurrentIndex, mPlayingQueue)) {
+            return null;
+        }
+        return mPlayingQueue.get((mCurrentIndex + 1) % mPlayingQueue.size());
+    }
+
+    public int getCurrentIndex() {
+        return mCurrentIndex;
+    }
+
+    public List<MediaSessionCompat.QueueItem> getCurrentQueue() {
+        return mPlayingQueue;
+    }
+
     public int getCurrentQueueSize() {
         if (mPlayingQueue == null) {
             return 0;
@@ -170,15 +201,119 @@ public class QueueManager {
 
     protected void setCurrentQueue(String title, List<MediaSessionCompat.QueueItem> newQueue,
                                    String initialMediaId) {
+        mQueueTitle = title;
         mPlayingQueue = newQueue;
+        rebuildIndexes();
         int index = 0;
         if (initialMediaId != null) {
-            index = QueueHelper.getMusicIndexOnQueue(mPlayingQueue, initialMediaId);
+            index = getIndexOnQueue(initialMediaId);
         }
         mCurrentIndex = Math.max(index, 0);
         mListener.onQueueUpdated(title, newQueue);
     }
 
+    /**
+     * @return what to save to resume the current queue later, at the given position of the
+     * current track, or null if there is nothing to resume.
+     */
+    public ResumeStateStore.ResumeState getResumeState(long positionMs) {
+        if (!(mPlayingQueue instanceof LazyQueue) || getCurrentMusic() == null) {
+            return null;
+        }
+        LazyQueue queue = (LazyQueue) mPlayingQueue;
+        return new ResumeStateStore.ResumeState(mQueueTitle, queue.getCategories(),
+                queue.getMusicIds(), mCurrentIndex, positionMs,
+                mMusicProvider.getMusic(queue.getMusicId(mCurrentIndex)));
+    }
+
+    /**
+     * Makes a queue saved by {@link #getResumeState(long)} the current one, without playing it.
+     * Only its current track needs to be known, so this doesn't wait for the catalog: the queue
+     * is set again once the catalog is loaded, for the other tracks to get their metadata.
+     *
+     * @return whether the queue could be restored
+     */
+    public boolean restoreQueue(final ResumeStateStore.ResumeState state) {
+        if (state.index < 0 || state.index >= state.musicIds.size()) {
+            return false;
+        }
+        if (state.currentTrack != null) {
+            mMusicProvider.addRestoredMusic(state.currentTrack);
+        }
+        if (mMusicProvider.getMusic(state.musicIds.get(state.index)) == null) {
+            LogHelper.w(TAG, "Can't restore a queue without its current track");
+            return false;
+        }
+        final LazyQueue queue = new LazyQueue(mMusicProvider, state.musicIds, state.categories);
+        setRestoredQueue(state.title, queue, state.index);
+
+        mMusicProvider.retrieveMediaAsync(new MusicProvider.Callback() {
+            @Override
+            public void onMusicCatalogReady(boolean success) {
+                // Items created before the catalog was loaded have no metadata.
+                if (success && mPlayingQueue == queue) {
+                    setRestoredQueue(state.title,
+                            new LazyQueue(mMusicProvider, state.musicIds, state.categories),
+                            mCurrentIndex);
+                }
+            }
+        });
+        return true;
+    }
+
+    // Unlike setCurrentQueue, keeps the given index.
+    private void setRestoredQueue(String title, LazyQueue queue, int index) {
+        mQueueTitle = title;
+        mPlayingQueue = queue;
+        rebuildIndexes();
+        mCurrentIndex = index;
+        mListener.onQueueUpdated(title, queue);
+        updateMetadata();
+    }
+
+    private void rebuildIndexes() {
+        if (mPlayingQueue == null || mPlayingQueue.isEmpty()) {
+            mIndexByQueueId = Collections.emptyMap();
+            mIndexByMediaId = Collections.emptyMap();
+            return;
+        }
+        int size = mPlayingQueue.size();
+        Map<Long, Integer> indexByQueueId = new HashMap<>(size * 4 / 3 + 1);
+        Map<String, Integer> indexByMediaId = new HashMap<>(size * 4 / 3 + 1);
+        // A LazyQueue can tell its IDs without creating its items.
+        LazyQueue lazyQueue = mPlayingQueue instanceof LazyQueue
+                ? (LazyQueue) mPlayingQueue : null;
+        for (int i = size - 1; i >= 0; i--) {
+            // Going backwards, so the first occurrence of a repeated key wins.
+            long queueId;
+            String mediaId;
+            if (lazyQueue != null) {
+                queueId = i;
+                mediaId = lazyQueue.getMediaId(i);
+            } else {
+                MediaSessionCompat.QueueItem item = mPlayingQueue.get(i);
+                queueId = item.getQueueId();
+                mediaId = item.getDescription().getMediaId();
+            }
+            indexByQueueId.put(queueId, i);
+            if (mediaId != null) {
+                indexByMediaId.put(mediaId, i);
+            }
+        }
+        mIndexByQueueId = indexByQueueId;
+        mIndexByMediaId = indexByMediaId;
+    }
+
+    private int getIndexOnQueue(long queueId) {
+        Integer index = mIndexByQueueId.get(queueId);
+        return index == null ? -1 : index;
+    }
+
+    private int getIndexOnQueue(String mediaId) {
+        Integer index = mIndexByMediaId.get(mediaId);
+        return index == null ? -1 : index;
+    }
+
     public void updateMetadata() {
         MediaSessionCompat.QueueItem currentMusic = getCurrentMusic();
         if (currentMusic == null) {
@@ -189,6 +324,11 @@ public class QueueManager {
                 currentMusic.getDescription().getMediaId());
         MediaMetadataCompat metadata = mMusicProvider.getMusic(musicId);
         if (metadata == null) {
+            if (!mMusicProvider.isInitialized()) {
+                // A restored queue moved past the tracks known before the catalog is loaded.
+                mListener.onMetadataRetrieveError();
+                return;
+            }
             throw new IllegalArgumentException("Invalid musicId " + musicId);
         }
 
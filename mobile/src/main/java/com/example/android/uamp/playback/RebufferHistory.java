@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import java.util.ArrayDeque;
+
+/**
+ * Remembers when playback recently stalled to rebuffer, so {@link BufferingPolicy} reacts to
+ * the current network and not to stalls that happened long ago. Not thread safe.
+ */
+final class RebufferHistory {
+
+    private final long mWindowMs;
+    // Times of the rebuffers within the window, oldest first.
+    private final ArrayDeque<Long> mTimesMs = new ArrayDeque<>();
+    private int mTotalCount;
+
+    /**
+     * @param windowMs how long a rebuffer is counted as recent
+     */
+    RebufferHistory(long windowMs) {
+        mWindowMs = windowMs;
+    }
+
+    void record(long nowMs) {
+        mTimesMs.addLast(nowMs);
+        mTotalCount++;
+        prune(nowMs);
+    }
+
+    /**
+     * @return the number of rebuffers in the window that ends at the given time.
+     */
+    int getRecentCount(long nowMs) {
+        prune(nowMs);
+        return mTimesMs.size();
+    }
+
+    /**
+     * @return the number of rebuffers ever recorded.
+     */
+    int getTotalCount() {
+        return mTotalCount;
+    }
+
+    private void prune(long nowMs) {
+        while (!mTimesMs.isEmpty() && nowMs - mTimesMs.peekFirst() > mWindowMs) {
+            mTimesMs.removeFirst();
+        }
+    }
+}
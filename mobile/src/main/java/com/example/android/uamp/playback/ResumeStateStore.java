@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.media.MediaMetadataCompat;
+
+import com.example.android.uamp.model.MusicProviderSource;
+import com.example.android.uamp.utils.LogHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps what was playing in local storage, so a new service can resume it after the old one was
+ * stopped or killed.
+ *
+ * The record is small: the queue as its categories and music IDs, the current index and
+ * position, and the metadata of the current track, so it can be played before the catalog is
+ * loaded. Saving only replaces the record to write: it's written on a background thread a
+ * short while after the first save, so frequent state changes cost one write. The file is
+ * replaced atomically, so a crash while writing leaves the previous record.
+ */
+public class ResumeStateStore {
+
+    public static final String FILE_NAME = "resume_state";
+
+    private static final String TAG = LogHelper.makeLogTag(ResumeStateStore.class);
+
+    private static final int VERSION = 1;
+    private static final String TEMP_SUFFIX = ".new";
+    // How long saves are collected before the last one is written.
+    private static final long WRITE_DELAY_MS = 2000;
+
+    /**
+     * What was playing, as saved by the last service.
+     */
+    public static class ResumeState {
+        public final String title;
+        public final String[] categories;
+        public final List<String> musicIds;
+        public final int index;
+        public final long positionMs;
+        // The track at index, or null if it wasn't known.
+        public final MediaMetadataCompat currentTrack;
+
+        public ResumeState(String title, String[] categories, List<String> musicIds, int index,
+                           long positionMs, MediaMetadataCompat currentTrack) {
+            this.title = title;
+            this.categories = categories;
+            this.musicIds = musicIds;
+            this.index = index;
+            this.positionMs = positionMs;
+            this.currentTrack = currentTrack;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * @param state the saved state, or null if there is none
+         */
+        void onStateRead(ResumeState state);
+    }
+
+    private final File mFile;
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // The state to write, guarded by this. A null state means there is nothing to write.
+    private ResumeState mPendingState;
+    // Set on the main thread by close(), after which nothing is saved or read.
+    private volatile boolean mClosed;
+
+    public ResumeStateStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the saved state on a background thread, and returns it on the main thread.
+     */
+    public void read(final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ResumeState state = readFile();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mClosed) {
+                            callback.onStateRead(state);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Saves the given state shortly, unless a newer one is saved before.
+     */
+    public void save(ResumeState state) {
+        if (state == null || mClosed) {
+            return;
+        }
+        boolean first;
+        synchronized (this) {
+            first = mPendingState == null;
+            mPendingState = state;
+        }
+        if (first) {
+            mExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    writePendingState();
+                }
+            }, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the last saved state now, and stops saving and reading, when the service is
+     * destroyed. Doesn't wait for the state to be written.
+     */
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writePendingState();
+            }
+        });
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Waits for the writes that follow {@link #close()}, for tests.
+     *
+     * @return whether they finished before the timeout
+     */
+    boolean awaitClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+
+    private void writePendingState() {
+        ResumeState state;
+        synchronized (this) {
+            state = mPendingState;
+            mPendingState = null;
+        }
+        if (state == null) {
+            return;
+        }
+        File temp = new File(mFile.getPath() + TEMP_SUFFIX);
+        DataOutputStream out = null;
+        try {
+            FileOutputStream fileOut = new FileOutputStream(temp);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            write(out, state);
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+            out = null;
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Could not rename " + temp);
+            }
+            LogHelper.d(TAG, "Saved a queue of ", state.musicIds.size(), " at ", state.index);
+        } catch (IOException e) {
+            LogHelper.w(TAG, e, "Could not save the resume state");
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private ResumeState readFile() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            return read(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            LogHelper.w(TAG, e, "Could not read the resume state");
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private static void write(DataOutputStream out, ResumeState state) throws IOException {
+        out.writeInt(VERSION);
+        writeString(out, state.title);
+        out.writeInt(state.categories.length);
+        for (String category : state.categories) {
+            out.writeUTF(category);
+        }
+        out.writeInt(state.musicIds.size());
+        for (String musicId : state.musicIds) {
+            out.writeUTF(musicId);
+        }
+        out.writeInt(state.index);
+        out.writeLong(state.positionMs);
+
+        MediaMetadataCompat track = state.currentTrack;
+        out.writeBoolean(track != null);
+        if (track != null) {
+            writeString(out, track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID));
+            writeString(out, track.getString(MusicProviderSource.CUSTOM_METADATA_TRACK_SOURCE));
+            writeString(out, track.getString(MediaMetadataCompat.METADATA_KEY_TITLE));
+            writeString(out, track.getString(MediaMetadataCompat.METADATA_KEY_ALBUM));
+            writeString(out, track.getString(MediaMetadataCompat.METADATA_KEY_ARTIST));
+            writeString(out, track.getString(MediaMetadataCompat.METADATA_KEY_GENRE));
+            writeString(out, track.getString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI));
+            out.writeLong(track.getLong(MediaMetadataCompat.METADATA_KEY_DURATION));
+            out.writeLong(track.getLong(MediaMetadataCompat.METADATA_KEY_TRACK_NUMBER));
+            out.writeLong(track.getLong(MediaMetadataCompat.METADATA_KEY_NUM_TRACKS));
+        }
+    }
+
+    private static ResumeState read(DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) {
+            return null;
+        }
+        String title = readString(in);
+        String[] categories = new String[in.readInt()];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = in.readUTF();
+        }
+        int size = in.readInt();
+        List<String> musicIds = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            musicIds.add(in.readUTF());
+        }
+        int index = in.readInt();
+        long positionMs = in.readLong();
+
+        MediaMetadataCompat track = null;
+        if (in.readBoolean()) {
+            //noinspection ResourceType
+            track = new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, readString(in))
+                    .putString(MusicProviderSource.CUSTOM_METADATA_TRACK_SOURCE, readString(in))
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, readString(in))
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, readString(in))
+                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, readString(in))
+                    .putString(MediaMetadataCompat.METADATA_KEY_GENRE, readString(in))
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI, readString(in))
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, in.readLong())
+                    .putLong(MediaMetadataCompat.METADATA_KEY_TRACK_NUMBER, in.readLong())
+                    .putLong(MediaMetadataCompat.METADATA_KEY_NUM_TRACKS, in.readLong())
+                    .build();
+        }
+        return new ResumeState(title, categories, Collections.unmodifiableList(musicIds), index,
+                positionMs, track);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void close(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
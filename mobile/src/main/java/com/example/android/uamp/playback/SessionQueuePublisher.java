@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.os.Parcel;
+import android.support.v4.media.session.MediaSessionCompat;
+
+import com.example.android.uamp.utils.LogHelper;
+
+import java.util.List;
+
+/**
+ * Publishes the playing queue to a {@link MediaSessionCompat}.
+ *
+ * The queue set on the session is parcelled to every controller (Android Auto, Wear, TV...), so
+ * with a queue of thousands of tracks it could fail with a TransactionTooLargeException, and
+ * would be expensive anyway. Only a window of the queue around the current item is published.
+ * The items keep their queue IDs, so controllers can still skip to them. The window only moves
+ * when playback gets close to one of its ends.
+ */
+public class SessionQueuePublisher {
+
+    private static final String TAG = LogHelper.makeLogTag(SessionQueuePublisher.class);
+
+    // Number of items published before and after the current one.
+    private static final int WINDOW_BEFORE = 20;
+    private static final int WINDOW_AFTER = 80;
+    // How close the current item may get to an end of the window before it's moved.
+    private static final int WINDOW_MARGIN = 10;
+
+    private final MediaSessionCompat mSession;
+
+    private List<MediaSessionCompat.QueueItem> mQueue;
+    // The published part of mQueue, from mWindowStart (inclusive) to mWindowEnd (exclusive).
+    private int mWindowStart;
+    private int mWindowEnd;
+
+    private int mPublishCount;
+    private long mTotalPublishedItems;
+
+    public SessionQueuePublisher(MediaSessionCompat session) {
+        mSession = session;
+    }
+
+    /**
+     * Publishes a new queue and its title.
+     */
+    public void setQueue(String title, List<MediaSessionCompat.QueueItem> queue,
+                         int currentIndex) {
+        mQueue = queue;
+        mSession.setQueueTitle(title);
+        publishWindow(currentIndex);
+    }
+
+    /**
+     * Moves the published window if the current item got close to one of its ends.
+     */
+    public void onCurrentIndexChanged(int currentIndex) {
+        if (mQueue == null) {
+            return;
+        }
+        boolean nearStart = mWindowStart > 0 && currentIndex < mWindowStart + WINDOW_MARGIN;
+        boolean nearEnd = mWindowEnd < mQueue.size() && currentIndex >= mWindowEnd - WINDOW_MARGIN;
+        if (nearStart || nearEnd) {
+            publishWindow(currentIndex);
+        }
+    }
+
+    public int getPublishCount() {
+        return mPublishCount;
+    }
+
+    /**
+     * @return the parcelled size of the published window, measured only when asked for a dump.
+     */
+    public long getWindowBytes() {
+        List<MediaSessionCompat.QueueItem> queue = mQueue;
+        if (queue == null) {
+            return 0;
+        }
+        return getParcelledSize(queue.subList(mWindowStart, mWindowEnd));
+    }
+
+    public long getTotalPublishedItems() {
+        return mTotalPublishedItems;
+    }
+
+    private void publishWindow(int currentIndex) {
+        if (mQueue == null) {
+            mWindowStart = 0;
+            mWindowEnd = 0;
+            mSession.setQueue(null);
+            return;
+        }
+        int size = mQueue.size();
+        int index = Math.max(0, Math.min(currentIndex, size - 1));
+        mWindowStart = Math.max(0, index - WINDOW_BEFORE);
+        mWindowEnd = Math.min(size, index + WINDOW_AFTER + 1);
+        List<MediaSessionCompat.QueueItem> window = mQueue.subList(mWindowStart, mWindowEnd);
+
+        mTotalPublishedItems += window.size();
+        mPublishCount++;
+        // Parcelling the window again is only worth it for the log.
+        if (LogHelper.isDebugEnabled(TAG)) {
+            LogHelper.d(TAG, "Publishing queue items ", mWindowStart, " to ", mWindowEnd, " of ",
+                    size, ": ", getParcelledSize(window), " bytes (", mTotalPublishedItems,
+                    " items in ", mPublishCount, " updates)");
+        }
+        mSession.setQueue(window);
+    }
+
+    // Package private so unit tests, which can't use a Parcel, can replace it.
+    long getParcelledSize(List<MediaSessionCompat.QueueItem> items) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeTypedList(items);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.ui;
+
+import android.view.Choreographer;
+
+import com.example.android.uamp.utils.LogHelper;
+
+/**
+ * Measures the time between frames while it runs, using {@link Choreographer} callbacks, and logs
+ * a summary when it stops: the number of frames, how many missed their deadline and the longest
+ * one. FrameMetrics would be more precise, but it needs API 24.
+ *
+ * The summary is a debug log, so nothing is measured when it wouldn't be logged, as in release
+ * builds.
+ *
+ * Must be used from the main thread.
+ */
+class FrameTimeMonitor implements Choreographer.FrameCallback {
+
+    private static final String TAG = LogHelper.makeLogTag(FrameTimeMonitor.class);
+
+    // Frame interval at 60Hz. A frame that takes more than one and a half of it made the display
+    // skip at least one refresh.
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+    private static final long SLOW_FRAME_NANOS = FRAME_INTERVAL_NANOS * 3 / 2;
+
+    private final String mName;
+
+    private boolean mRunning;
+    // When to stop on its own, or 0 to run until stop() is called.
+    private long mStopAtNanos;
+    private long mLastFrameNanos;
+    private int mFrameCount;
+    private int mSlowFrameCount;
+    private long mMaxFrameNanos;
+
+    FrameTimeMonitor(String name) {
+        mName = name;
+    }
+
+    /**
+     * Starts measuring until {@link #stop()} is called.
+     */
+    void start() {
+        mStopAtNanos = 0;
+        startIfStopped();
+    }
+
+    /**
+     * Measures the frames drawn in the given time, unless it's already running until stopped.
+     */
+    void measureFor(long durationMs) {
+        if (mRunning && mStopAtNanos == 0) {
+            return;
+        }
+        mStopAtNanos = System.nanoTime() + durationMs * 1000000L;
+        startIfStopped();
+    }
+
+    /**
+     * Stops measuring and logs the frame times since it started.
+     */
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        if (mFrameCount > 0) {
+            LogHelper.d(TAG, mName, ": ", mFrameCount, " frames, ", mSlowFrameCount,
+                    " slow, longest ", mMaxFrameNanos / 1000000, "ms");
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mFrameCount++;
+            if (frameNanos > SLOW_FRAME_NANOS) {
+                mSlowFrameCount++;
+            }
+            mMaxFrameNanos = Math.max(mMaxFrameNanos, frameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        if (mStopAtNanos != 0 && frameTimeNanos >= mStopAtNanos) {
+            stop();
+        } else {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void startIfStopped() {
+        if (mRunning || !LogHelper.isDebugEnabled(TAG)) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        mFrameCount = 0;
+        mSlowFrameCount = 0;
+        mMaxFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
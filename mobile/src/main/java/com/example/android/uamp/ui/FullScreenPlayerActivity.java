@@ -20,9 +20,7 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.RemoteException;
-import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.media.MediaBrowserCompat;
@@ -43,11 +41,6 @@ import com.example.android.uamp.MusicService;
 import com.example.android.uamp.R;
 import com.example.android.uamp.utils.LogHelper;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-
 import static android.view.View.INVISIBLE;
 import static android.view.View.VISIBLE;
 
@@ -57,8 +50,6 @@ import static android.view.View.VISIBLE;
  */
 public class FullScreenPlayerActivity extends ActionBarCastActivity {
     private static final String TAG = LogHelper.makeLogTag(FullScreenPlayerActivity.class);
-    private static final long PROGRESS_UPDATE_INTERNAL = 1000;
-    private static final long PROGRESS_UPDATE_INITIAL_INTERVAL = 100;
 
     private ImageView mSkipPrev;
     private ImageView mSkipNext;
@@ -76,21 +67,14 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
     private ImageView mBackgroundImage;
 
     private String mCurrentArtUrl;
-    private final Handler mHandler = new Handler();
     private MediaBrowserCompat mMediaBrowser;
 
-    private final Runnable mUpdateProgressTask = new Runnable() {
+    private final ProgressClock mProgressClock = new ProgressClock(new ProgressClock.Listener() {
         @Override
-        public void run() {
-            updateProgress();
+        public void onProgress(long positionMs) {
+            mSeekbar.setProgress((int) positionMs);
         }
-    };
-
-    private final ScheduledExecutorService mExecutorService =
-        Executors.newSingleThreadScheduledExecutor();
-
-    private ScheduledFuture<?> mScheduleFuture;
-    private PlaybackStateCompat mLastPlaybackState;
+    });
 
     private final MediaControllerCompat.Callback mCallback = new MediaControllerCompat.Callback() {
         @Override
@@ -172,12 +156,10 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
                         case PlaybackStateCompat.STATE_PLAYING: // fall through
                         case PlaybackStateCompat.STATE_BUFFERING:
                             controls.pause();
-                            stopSeekbarUpdate();
                             break;
                         case PlaybackStateCompat.STATE_PAUSED:
                         case PlaybackStateCompat.STATE_STOPPED:
                             controls.play();
-                            scheduleSeekbarUpdate();
                             break;
                         default:
                             LogHelper.d(TAG, "onClick with state ", state.getState());
@@ -186,6 +168,15 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
             }
         });
 
+        mSeekbar.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                mProgressClock.setStep(
+                        ProgressClock.getStepForWidth(mSeekbar.getMax(), right - left));
+            }
+        });
+
         mSeekbar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
@@ -194,13 +185,13 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-                stopSeekbarUpdate();
+                mProgressClock.stop();
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
                 MediaControllerCompat.getMediaController(FullScreenPlayerActivity.this).getTransportControls().seekTo(seekBar.getProgress());
-                scheduleSeekbarUpdate();
+                mProgressClock.start();
             }
         });
 
@@ -231,11 +222,6 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
             updateMediaDescription(metadata.getDescription());
             updateDuration(metadata);
         }
-        updateProgress();
-        if (state != null && (state.getState() == PlaybackStateCompat.STATE_PLAYING ||
-                state.getState() == PlaybackStateCompat.STATE_BUFFERING)) {
-            scheduleSeekbarUpdate();
-        }
     }
 
     private void updateFromParams(Intent intent) {
@@ -248,32 +234,14 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
         }
     }
 
-    private void scheduleSeekbarUpdate() {
-        stopSeekbarUpdate();
-        if (!mExecutorService.isShutdown()) {
-            mScheduleFuture = mExecutorService.scheduleAtFixedRate(
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            mHandler.post(mUpdateProgressTask);
-                        }
-                    }, PROGRESS_UPDATE_INITIAL_INTERVAL,
-                    PROGRESS_UPDATE_INTERNAL, TimeUnit.MILLISECONDS);
-        }
-    }
-
-    private void stopSeekbarUpdate() {
-        if (mScheduleFuture != null) {
-            mScheduleFuture.cancel(false);
-        }
-    }
-
     @Override
     public void onStart() {
         super.onStart();
         if (mMediaBrowser != null) {
             mMediaBrowser.connect();
         }
+        // Only move the seekbar while it can be seen.
+        mProgressClock.start();
     }
 
     @Override
@@ -286,13 +254,7 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
         if (controllerCompat != null) {
             controllerCompat.unregisterCallback(mCallback);
         }
-    }
-
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-        stopSeekbarUpdate();
-        mExecutorService.shutdown();
+        mProgressClock.stop();
     }
 
     private void fetchImageAsync(@NonNull MediaDescriptionCompat description) {
@@ -342,13 +304,16 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
         int duration = (int) metadata.getLong(MediaMetadataCompat.METADATA_KEY_DURATION);
         mSeekbar.setMax(duration);
         mEnd.setText(DateUtils.formatElapsedTime(duration/1000));
+        mProgressClock.setDuration(duration);
+        // Move the seekbar one pixel at a time, or once per second before it's laid out.
+        mProgressClock.setStep(ProgressClock.getStepForWidth(duration, mSeekbar.getWidth()));
     }
 
     private void updatePlaybackState(PlaybackStateCompat state) {
         if (state == null) {
             return;
         }
-        mLastPlaybackState = state;
+        mProgressClock.setPlaybackState(state);
         MediaControllerCompat controllerCompat = MediaControllerCompat.getMediaController(FullScreenPlayerActivity.this);
         if (controllerCompat != null && controllerCompat.getExtras() != null) {
             String castName = controllerCompat.getExtras().getString(MusicService.EXTRA_CONNECTED_CAST);
@@ -363,27 +328,23 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
                 mPlayPause.setVisibility(VISIBLE);
                 mPlayPause.setImageDrawable(mPauseDrawable);
                 mControllers.setVisibility(VISIBLE);
-                scheduleSeekbarUpdate();
                 break;
             case PlaybackStateCompat.STATE_PAUSED:
                 mControllers.setVisibility(VISIBLE);
                 mLoading.setVisibility(INVISIBLE);
                 mPlayPause.setVisibility(VISIBLE);
                 mPlayPause.setImageDrawable(mPlayDrawable);
-                stopSeekbarUpdate();
                 break;
             case PlaybackStateCompat.STATE_NONE:
             case PlaybackStateCompat.STATE_STOPPED:
                 mLoading.setVisibility(INVISIBLE);
                 mPlayPause.setVisibility(VISIBLE);
                 mPlayPause.setImageDrawable(mPlayDrawable);
-                stopSeekbarUpdate();
                 break;
             case PlaybackStateCompat.STATE_BUFFERING:
                 mPlayPause.setVisibility(INVISIBLE);
                 mLoading.setVisibility(VISIBLE);
                 mLine3.setText(R.string.loading);
-                stopSeekbarUpdate();
                 break;
             default:
                 LogHelper.d(TAG, "Unhandled state ", state.getState());
@@ -394,21 +355,4 @@ public class FullScreenPlayerActivity extends ActionBarCastActivity {
         mSkipPrev.setVisibility((state.getActions() & PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS) == 0
             ? INVISIBLE : VISIBLE );
     }
-
-    private void updateProgress() {
-        if (mLastPlaybackState == null) {
-            return;
-        }
-        long currentPosition = mLastPlaybackState.getPosition();
-        if (mLastPlaybackState.getState() == PlaybackStateCompat.STATE_PLAYING) {
-            // Calculate the elapsed time between the last position update and now and unless
-            // paused, we can assume (delta * speed) + current position is approximately the
-            // latest position. This ensure that we do not repeatedly call the getPlaybackState()
-            // on MediaControllerCompat.
-            long timeDelta = SystemClock.elapsedRealtime() -
-                    mLastPlaybackState.getLastPositionUpdateTime();
-            currentPosition += (int) timeDelta * mLastPlaybackState.getPlaybackSpeed();
-        }
-        mSeekbar.setProgress((int) currentPosition);
-    }
 }
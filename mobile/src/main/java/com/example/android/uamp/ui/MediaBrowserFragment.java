@@ -28,13 +28,14 @@ import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaControllerCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
-import android.util.Log;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -43,7 +44,6 @@ import com.example.android.uamp.utils.LogHelper;
 import com.example.android.uamp.utils.MediaIDHelper;
 import com.example.android.uamp.utils.NetworkHelper;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -52,7 +52,7 @@ import java.util.List;
  * <p/>
  * It uses a {@link MediaBrowserCompat} to connect to the {@link com.example.android.uamp.MusicService}.
  * Once connected, the fragment subscribes to get all the children.
- * All {@link MediaBrowserCompat.MediaItem}'s that can be browsed are shown in a ListView.
+ * All {@link MediaBrowserCompat.MediaItem}'s that can be browsed are shown in a RecyclerView.
  */
 public class MediaBrowserFragment extends Fragment {
 
@@ -60,7 +60,12 @@ public class MediaBrowserFragment extends Fragment {
 
     private static final String ARG_MEDIA_ID = "media_id";
 
+    // How long to measure frame times after the list content changes.
+    private static final long UPDATE_FRAME_MONITOR_MS = 1000;
+
     private BrowseAdapter mBrowserAdapter;
+    private FrameTimeMonitor mScrollFrameMonitor;
+    private FrameTimeMonitor mUpdateFrameMonitor;
     private String mMediaId;
     private MediaFragmentListener mMediaFragmentListener;
     private View mErrorView;
@@ -96,7 +101,7 @@ public class MediaBrowserFragment extends Fragment {
             }
             LogHelper.d(TAG, "Received metadata change to media ",
                     metadata.getDescription().getMediaId());
-            mBrowserAdapter.notifyDataSetChanged();
+            updateNowPlaying();
         }
 
         @Override
@@ -104,7 +109,7 @@ public class MediaBrowserFragment extends Fragment {
             super.onPlaybackStateChanged(state);
             LogHelper.d(TAG, "Received state change: ", state);
             checkForUserVisibleErrors(false);
-            mBrowserAdapter.notifyDataSetChanged();
+            updateNowPlaying();
         }
     };
 
@@ -117,11 +122,10 @@ public class MediaBrowserFragment extends Fragment {
                     LogHelper.d(TAG, "fragment onChildrenLoaded, parentId=" + parentId +
                         "  count=" + children.size());
                     checkForUserVisibleErrors(children.isEmpty());
-                    mBrowserAdapter.clear();
-                    for (MediaBrowserCompat.MediaItem item : children) {
-                        mBrowserAdapter.add(item);
-                    }
-                    mBrowserAdapter.notifyDataSetChanged();
+                    // The diff with the current list is computed in the background, and only
+                    // the rows that changed are rebound.
+                    mBrowserAdapter.submitList(children);
+                    mUpdateFrameMonitor.measureFor(UPDATE_FRAME_MONITOR_MS);
                 } catch (Throwable t) {
                     LogHelper.e(TAG, "Error on childrenloaded", t);
                 }
@@ -152,19 +156,32 @@ public class MediaBrowserFragment extends Fragment {
         mErrorView = rootView.findViewById(R.id.playback_error);
         mErrorMessage = (TextView) mErrorView.findViewById(R.id.error_message);
 
-        mBrowserAdapter = new BrowseAdapter(getActivity());
-
-        ListView listView = (ListView) rootView.findViewById(R.id.list_view);
-        listView.setAdapter(mBrowserAdapter);
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        mBrowserAdapter = new BrowseAdapter(new View.OnClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onClick(View view) {
                 checkForUserVisibleErrors(false);
-                MediaBrowserCompat.MediaItem item = mBrowserAdapter.getItem(position);
+                MediaBrowserCompat.MediaItem item = (MediaBrowserCompat.MediaItem) view.getTag();
                 mMediaFragmentListener.onMediaItemSelected(item);
             }
         });
 
+        mScrollFrameMonitor = new FrameTimeMonitor("Browse list scroll");
+        mUpdateFrameMonitor = new FrameTimeMonitor("Browse list update");
+
+        RecyclerView listView = (RecyclerView) rootView.findViewById(R.id.list_view);
+        listView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        listView.setAdapter(mBrowserAdapter);
+        listView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    mScrollFrameMonitor.stop();
+                } else {
+                    mScrollFrameMonitor.start();
+                }
+            }
+        });
+
         return rootView;
     }
 
@@ -199,6 +216,8 @@ public class MediaBrowserFragment extends Fragment {
             controller.unregisterCallback(mMediaControllerCallback);
         }
         this.getActivity().unregisterReceiver(mConnectivityChangeReceiver);
+        mScrollFrameMonitor.stop();
+        mUpdateFrameMonitor.stop();
     }
 
     @Override
@@ -252,6 +271,13 @@ public class MediaBrowserFragment extends Fragment {
         if (controller != null) {
             controller.registerCallback(mMediaControllerCallback);
         }
+        updateNowPlaying();
+    }
+
+    // Reads what is being played once, for all the rows of the list.
+    private void updateNowPlaying() {
+        MediaControllerCompat controller = MediaControllerCompat.getMediaController(getActivity());
+        mBrowserAdapter.updateNowPlaying(controller);
     }
 
     private void checkForUserVisibleErrors(boolean forceError) {
@@ -299,18 +325,88 @@ public class MediaBrowserFragment extends Fragment {
     }
 
     // An adapter for showing the list of browsed MediaItem's
-    private static class BrowseAdapter extends ArrayAdapter<MediaBrowserCompat.MediaItem> {
+    private static class BrowseAdapter
+            extends ListAdapter<MediaBrowserCompat.MediaItem, MediaItemViewHolder> {
+
+        // Payload of the rows whose only change is their playing state.
+        private static final Object PAYLOAD_PLAYING_STATE = new Object();
+
+        private static final DiffUtil.ItemCallback<MediaBrowserCompat.MediaItem> DIFF_CALLBACK =
+                new DiffUtil.ItemCallback<MediaBrowserCompat.MediaItem>() {
+            @Override
+            public boolean areItemsTheSame(MediaBrowserCompat.MediaItem oldItem,
+                                           MediaBrowserCompat.MediaItem newItem) {
+                return TextUtils.equals(oldItem.getMediaId(), newItem.getMediaId());
+            }
 
-        public BrowseAdapter(Activity context) {
-            super(context, R.layout.media_list_item, new ArrayList<MediaBrowserCompat.MediaItem>());
+            @Override
+            public boolean areContentsTheSame(MediaBrowserCompat.MediaItem oldItem,
+                                              MediaBrowserCompat.MediaItem newItem) {
+                return oldItem.getFlags() == newItem.getFlags()
+                        && TextUtils.equals(oldItem.getDescription().getTitle(),
+                                newItem.getDescription().getTitle())
+                        && TextUtils.equals(oldItem.getDescription().getSubtitle(),
+                                newItem.getDescription().getSubtitle());
+            }
+        };
+
+        private final View.OnClickListener mOnClickListener;
+        private final NowPlayingSnapshot mNowPlaying = new NowPlayingSnapshot();
+
+        public BrowseAdapter(View.OnClickListener onClickListener) {
+            super(DIFF_CALLBACK);
+            mOnClickListener = onClickListener;
+        }
+
+        @Override
+        public MediaItemViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            MediaItemViewHolder holder = MediaItemViewHolder.create(parent);
+            holder.itemView.setOnClickListener(mOnClickListener);
+            return holder;
         }
 
-        @NonNull
         @Override
-        public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+        public void onBindViewHolder(@NonNull MediaItemViewHolder holder, int position) {
             MediaBrowserCompat.MediaItem item = getItem(position);
-            return MediaItemViewHolder.setupListView((Activity) getContext(), convertView, parent,
-                    item);
+            holder.itemView.setTag(item);
+            holder.bind(item, mNowPlaying);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull MediaItemViewHolder holder, int position,
+                                     @NonNull List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+            holder.bindState(getItem(position), mNowPlaying);
+        }
+
+        /**
+         * Takes a new snapshot of what the controller plays. If it changed, rebinds the row that
+         * was playing before and the one playing now.
+         */
+        void updateNowPlaying(MediaControllerCompat controller) {
+            int previousPosition = findPlayingPosition();
+            if (!mNowPlaying.update(controller)) {
+                return;
+            }
+            int playingPosition = findPlayingPosition();
+            if (previousPosition >= 0 && previousPosition != playingPosition) {
+                notifyItemChanged(previousPosition, PAYLOAD_PLAYING_STATE);
+            }
+            if (playingPosition >= 0) {
+                notifyItemChanged(playingPosition, PAYLOAD_PLAYING_STATE);
+            }
+        }
+
+        private int findPlayingPosition() {
+            for (int i = 0; i < getItemCount(); i++) {
+                if (mNowPlaying.isPlaying(getItem(i))) {
+                    return i;
+                }
+            }
+            return -1;
         }
     }
 
@@ -26,6 +26,7 @@ import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaDescriptionCompat;
 import android.support.v4.media.session.MediaControllerCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -35,7 +36,7 @@ import android.widget.TextView;
 import com.example.android.uamp.R;
 import com.example.android.uamp.utils.MediaIDHelper;
 
-public class MediaItemViewHolder {
+public class MediaItemViewHolder extends RecyclerView.ViewHolder {
 
     public static final int STATE_INVALID = -1;
     public static final int STATE_NONE = 0;
@@ -46,53 +47,68 @@ public class MediaItemViewHolder {
     private static ColorStateList sColorStatePlaying;
     private static ColorStateList sColorStateNotPlaying;
 
-    private ImageView mImageView;
-    private TextView mTitleView;
-    private TextView mDescriptionView;
-
-    // Returns a view for use in media item list.
-    static View setupListView(Activity activity, View convertView, ViewGroup parent,
-                              MediaBrowserCompat.MediaItem item) {
-        if (sColorStateNotPlaying == null || sColorStatePlaying == null) {
-            initializeColorStateLists(activity);
-        }
-
-        MediaItemViewHolder holder;
-
-        Integer cachedState = STATE_INVALID;
+    private final ImageView mImageView;
+    private final TextView mTitleView;
+    private final TextView mDescriptionView;
+
+    // The state currently shown by mImageView.
+    private int mState = STATE_INVALID;
+    // The drawable of each state, created the first time this row shows it. Drawables can't be
+    // shared between views, but rows can keep theirs while they are recycled.
+    private final Drawable[] mStateDrawables = new Drawable[STATE_PLAYING + 1];
+
+    private MediaItemViewHolder(View itemView) {
+        super(itemView);
+        mImageView = (ImageView) itemView.findViewById(R.id.play_eq);
+        mTitleView = (TextView) itemView.findViewById(R.id.title);
+        mDescriptionView = (TextView) itemView.findViewById(R.id.description);
+    }
 
-        if (convertView == null) {
-            convertView = LayoutInflater.from(activity)
-                    .inflate(R.layout.media_list_item, parent, false);
-            holder = new MediaItemViewHolder();
-            holder.mImageView = (ImageView) convertView.findViewById(R.id.play_eq);
-            holder.mTitleView = (TextView) convertView.findViewById(R.id.title);
-            holder.mDescriptionView = (TextView) convertView.findViewById(R.id.description);
-            convertView.setTag(holder);
-        } else {
-            holder = (MediaItemViewHolder) convertView.getTag();
-            cachedState = (Integer) convertView.getTag(R.id.tag_mediaitem_state_cache);
-        }
+    // Returns a view holder for use in media item list.
+    static MediaItemViewHolder create(ViewGroup parent) {
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.media_list_item, parent, false);
+        return new MediaItemViewHolder(itemView);
+    }
 
+    // Shows the given item, including its playing state.
+    void bind(MediaBrowserCompat.MediaItem item, NowPlayingSnapshot nowPlaying) {
         MediaDescriptionCompat description = item.getDescription();
-        holder.mTitleView.setText(description.getTitle());
-        holder.mDescriptionView.setText(description.getSubtitle());
+        mTitleView.setText(description.getTitle());
+        mDescriptionView.setText(description.getSubtitle());
+        bindState(item, nowPlaying);
+    }
 
-        // If the state of convertView is different, we need to adapt the view to the
+    // Only updates the playing state of the given item, which is already shown.
+    void bindState(MediaBrowserCompat.MediaItem item, NowPlayingSnapshot nowPlaying) {
+        // If the state of the recycled view is different, we need to adapt the view to the
         // new state.
-        int state = getMediaItemState(activity, item);
-        if (cachedState == null || cachedState != state) {
-            Drawable drawable = getDrawableByState(activity, state);
+        int state = nowPlaying.getItemState(item);
+        if (state != mState) {
+            Drawable drawable = getStateDrawable(state);
             if (drawable != null) {
-                holder.mImageView.setImageDrawable(drawable);
-                holder.mImageView.setVisibility(View.VISIBLE);
+                mImageView.setImageDrawable(drawable);
+                mImageView.setVisibility(View.VISIBLE);
             } else {
-                holder.mImageView.setVisibility(View.GONE);
+                mImageView.setVisibility(View.GONE);
             }
-            convertView.setTag(R.id.tag_mediaitem_state_cache, state);
+            mState = state;
         }
+    }
 
-        return convertView;
+    private Drawable getStateDrawable(int state) {
+        if (state < 0 || state >= mStateDrawables.length) {
+            return null;
+        }
+        Drawable drawable = mStateDrawables[state];
+        if (drawable == null) {
+            drawable = getDrawableByState(itemView.getContext(), state);
+            mStateDrawables[state] = drawable;
+        } else if (drawable instanceof AnimationDrawable) {
+            // Restart the equalizer animation, which stops when its row stops showing it.
+            ((AnimationDrawable) drawable).start();
+        }
+        return drawable;
     }
 
     private static void initializeColorStateLists(Context ctx) {
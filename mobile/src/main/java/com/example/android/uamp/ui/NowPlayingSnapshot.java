@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.ui;
+
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaControllerCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.TextUtils;
+
+import com.example.android.uamp.utils.MediaIDHelper;
+
+/**
+ * What the {@link MediaControllerCompat} is playing, read once per controller callback and then
+ * shared by all the rows of a list.
+ *
+ * Working out the state of a row used to query the controller, its metadata and description for
+ * every row. With the snapshot, it's a comparison of the row's mediaID with the music ID being
+ * played, which doesn't allocate.
+ */
+class NowPlayingSnapshot {
+
+    // The music ID being played, or null.
+    private String mMusicId;
+    // One of the MediaItemViewHolder states, for the item being played.
+    private int mState = MediaItemViewHolder.STATE_NONE;
+
+    /**
+     * Reads the current metadata and playback state of the given controller.
+     *
+     * @return whether the music being played or its state changed
+     */
+    boolean update(MediaControllerCompat controller) {
+        String musicId = null;
+        int state = MediaItemViewHolder.STATE_NONE;
+        if (controller != null) {
+            MediaMetadataCompat metadata = controller.getMetadata();
+            if (metadata != null) {
+                musicId = metadata.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+            }
+            state = getState(controller.getPlaybackState());
+        }
+        if (TextUtils.equals(musicId, mMusicId) && state == mState) {
+            return false;
+        }
+        mMusicId = musicId;
+        mState = state;
+        return true;
+    }
+
+    /**
+     * @return whether the given item is the one being played or paused.
+     */
+    boolean isPlaying(MediaBrowserCompat.MediaItem item) {
+        String mediaId = item.getMediaId();
+        return mMusicId != null && mediaId != null && item.isPlayable()
+                && MediaIDHelper.hasMusicID(mediaId, mMusicId);
+    }
+
+    /**
+     * @return the state to show for the given item, as
+     * {@link MediaItemViewHolder#getMediaItemState} would compute it.
+     */
+    int getItemState(MediaBrowserCompat.MediaItem item) {
+        if (!item.isPlayable()) {
+            return MediaItemViewHolder.STATE_NONE;
+        }
+        return isPlaying(item) ? mState : MediaItemViewHolder.STATE_PLAYABLE;
+    }
+
+    private static int getState(PlaybackStateCompat pbState) {
+        // Same mapping as MediaItemViewHolder.getStateFromController
+        if (pbState == null || pbState.getState() == PlaybackStateCompat.STATE_ERROR) {
+            return MediaItemViewHolder.STATE_NONE;
+        } else if (pbState.getState() == PlaybackStateCompat.STATE_PLAYING) {
+            return MediaItemViewHolder.STATE_PLAYING;
+        } else {
+            return MediaItemViewHolder.STATE_PAUSED;
+        }
+    }
+}
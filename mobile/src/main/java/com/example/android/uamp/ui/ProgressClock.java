@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.ui;
+
+import android.os.SystemClock;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.view.Choreographer;
+
+/**
+ * Drives progress bars from the last {@link PlaybackStateCompat}.
+ *
+ * The current position is extrapolated from the position, update time and speed of the state,
+ * instead of polling the controller. While the clock runs and the state is playing, it reports
+ * the position on {@link Choreographer} frames, so the updates are aligned with the display.
+ * It only asks for the frame in which the position moved by a given step (see
+ * {@link #setStep(long)}), and doesn't wake up at all while paused or stopped.
+ *
+ * Must be used from the main thread.
+ */
+public class ProgressClock implements Choreographer.FrameCallback {
+
+    // Used until a step is known, as the old polling interval was.
+    private static final long DEFAULT_STEP_MS = 1000;
+    private static final long FRAME_MS = 16;
+
+    public interface Listener {
+        void onProgress(long positionMs);
+    }
+
+    private final Listener mListener;
+
+    private PlaybackStateCompat mState;
+    private long mDurationMs;
+    private long mStepMs = DEFAULT_STEP_MS;
+    // Whether the owner is showing the progress.
+    private boolean mRunning;
+    // Whether a frame callback is posted.
+    private boolean mScheduled;
+    private long mLastReportedPosition = -1;
+
+    public ProgressClock(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return the step that moves a progress bar of the given width by one pixel.
+     */
+    public static long getStepForWidth(long durationMs, int widthPx) {
+        if (durationMs <= 0 || widthPx <= 0) {
+            return DEFAULT_STEP_MS;
+        }
+        return Math.max(FRAME_MS, durationMs / widthPx);
+    }
+
+    /**
+     * Sets the smallest change of the position that is reported.
+     */
+    public void setStep(long stepMs) {
+        mStepMs = Math.max(FRAME_MS, stepMs);
+        reschedule();
+    }
+
+    /**
+     * Sets the duration of the current track, to which positions are limited. 0 if unknown.
+     */
+    public void setDuration(long durationMs) {
+        mDurationMs = durationMs;
+    }
+
+    /**
+     * Sets the state to extrapolate from, and reports its position if the clock runs.
+     */
+    public void setPlaybackState(PlaybackStateCompat state) {
+        mState = state;
+        if (mRunning) {
+            report(getPosition());
+        }
+        reschedule();
+    }
+
+    /**
+     * Starts reporting the position while playing, typically when the progress becomes visible.
+     */
+    public void start() {
+        mRunning = true;
+        if (mState != null) {
+            // It moved while the clock was stopped.
+            report(getPosition());
+        }
+        reschedule();
+    }
+
+    /**
+     * Stops reporting the position, until {@link #start()} is called again.
+     */
+    public void stop() {
+        mRunning = false;
+        reschedule();
+    }
+
+    /**
+     * @return the position extrapolated from the last playback state, or 0 if there is none.
+     */
+    public long getPosition() {
+        if (mState == null) {
+            return 0;
+        }
+        long position = mState.getPosition();
+        if (isPlaying()) {
+            // Calculate the elapsed time between the last position update and now and unless
+            // paused, we can assume (delta * speed) + current position is approximately the
+            // latest position. This ensure that we do not repeatedly call the getPlaybackState()
+            // on MediaControllerCompat.
+            long timeDelta = SystemClock.elapsedRealtime() - mState.getLastPositionUpdateTime();
+            position += (long) (timeDelta * mState.getPlaybackSpeed());
+        }
+        if (mDurationMs > 0) {
+            position = Math.min(position, mDurationMs);
+        }
+        return Math.max(0, position);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        if (!shouldRun()) {
+            return;
+        }
+        long position = getPosition();
+        if (Math.abs(position - mLastReportedPosition) >= mStepMs) {
+            report(position);
+        }
+        schedule(position);
+    }
+
+    private boolean isPlaying() {
+        return mState != null && mState.getState() == PlaybackStateCompat.STATE_PLAYING;
+    }
+
+    private boolean shouldRun() {
+        return mRunning && isPlaying();
+    }
+
+    private void report(long position) {
+        mLastReportedPosition = position;
+        mListener.onProgress(position);
+    }
+
+    private void reschedule() {
+        if (mScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mScheduled = false;
+        }
+        if (shouldRun()) {
+            schedule(getPosition());
+        }
+    }
+
+    // Asks for the frame in which the position will have moved by one step.
+    private void schedule(long position) {
+        if (mDurationMs > 0 && position >= mDurationMs) {
+            // Nothing moves until the next playback state.
+            return;
+        }
+        long delayMs = mStepMs;
+        float speed = mState.getPlaybackSpeed();
+        if (speed > 0) {
+            long remainingMs = mLastReportedPosition + mStepMs - position;
+            // Wake up one frame early, so the report isn't a frame late.
+            delayMs = Math.max(0, (long) (remainingMs / speed) - FRAME_MS);
+        }
+        Choreographer.getInstance().postFrameCallbackDelayed(this, delayMs);
+        mScheduled = true;
+    }
+}
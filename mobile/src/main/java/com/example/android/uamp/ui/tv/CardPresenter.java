@@ -57,12 +57,12 @@ public class CardPresenter extends Presenter {
         cardViewHolder.setState(MediaItemViewHolder.STATE_NONE);
         if (item instanceof  MediaBrowserCompat.MediaItem) {
             MediaBrowserCompat.MediaItem mediaItem = (MediaBrowserCompat.MediaItem) item;
-            LogHelper.d(TAG, "onBindViewHolder MediaItem: ", mediaItem.toString());
+            LogHelper.d(TAG, "onBindViewHolder MediaItem: ", mediaItem);
             description = mediaItem.getDescription();
             cardViewHolder.setState(MediaItemViewHolder.getMediaItemState(mContext, mediaItem));
         } else if (item instanceof MediaSessionCompat.QueueItem) {
             MediaSessionCompat.QueueItem queueItem = (MediaSessionCompat.QueueItem) item;
-            LogHelper.d(TAG, "onBindViewHolder QueueItem: ", queueItem.toString());
+            LogHelper.d(TAG, "onBindViewHolder QueueItem: ", queueItem);
             description = queueItem.getDescription();
             if (QueueHelper.isQueueItemPlaying(mContext, queueItem)) {
                 cardViewHolder.setState(MediaItemViewHolder.getStateFromController(mContext));
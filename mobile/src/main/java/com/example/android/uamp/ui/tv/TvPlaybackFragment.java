@@ -20,8 +20,6 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.SystemClock;
 import android.support.v17.leanback.app.BackgroundManager;
 import android.support.v17.leanback.app.PlaybackSupportFragment;
 import android.support.v17.leanback.widget.AbstractDetailsDescriptionPresenter;
@@ -48,6 +46,7 @@ import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 
 import com.example.android.uamp.AlbumArtCache;
+import com.example.android.uamp.ui.ProgressClock;
 import com.example.android.uamp.utils.LogHelper;
 import com.example.android.uamp.utils.QueueHelper;
 
@@ -60,8 +59,6 @@ public class TvPlaybackFragment extends PlaybackSupportFragment {
     private static final String TAG = LogHelper.makeLogTag(TvPlaybackFragment.class);
 
     private static final int BACKGROUND_TYPE = PlaybackSupportFragment.BG_DARK;
-    private static final int DEFAULT_UPDATE_PERIOD = 1000;
-    private static final int UPDATE_PERIOD = 16;
 
     private ArrayObjectAdapter mRowsAdapter;
     private ArrayObjectAdapter mPrimaryActionsAdapter;
@@ -71,11 +68,7 @@ public class TvPlaybackFragment extends PlaybackSupportFragment {
     private PlaybackControlsRow mPlaybackControlsRow;
     private List <MediaSessionCompat.QueueItem> mPlaylistQueue;
     private int mDuration;
-    private Handler mHandler;
-    private Runnable mRunnable;
-
-    private long mLastPosition;
-    private long mLastPositionUpdateTime;
+    private ProgressClock mProgressClock;
 
     private BackgroundManager mBackgroundManager;
     private ArrayObjectAdapter mListRowAdapter;
@@ -90,7 +83,14 @@ public class TvPlaybackFragment extends PlaybackSupportFragment {
 
         mBackgroundManager = BackgroundManager.getInstance(getActivity());
         mBackgroundManager.attach(getActivity().getWindow());
-        mHandler = new Handler();
+        mProgressClock = new ProgressClock(new ProgressClock.Listener() {
+            @Override
+            public void onProgress(long positionMs) {
+                if (mPlaybackControlsRow != null) {
+                    mPlaybackControlsRow.setCurrentTime((int) positionMs);
+                }
+            }
+        });
         mListRowAdapter = new ArrayObjectAdapter(new CardPresenter(getActivity()));
         mPresenterSelector = new ClassPresenterSelector();
         mRowsAdapter = new ArrayObjectAdapter(mPresenterSelector);
@@ -99,6 +99,19 @@ public class TvPlaybackFragment extends PlaybackSupportFragment {
         setFadingEnabled(false);
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        // Only move the progress bar while it can be seen.
+        mProgressClock.start();
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        mProgressClock.stop();
+    }
+
     private void initializePlaybackControls(MediaMetadataCompat metadata) {
         setupRows();
         addPlaybackControlsRow(metadata);
@@ -211,42 +224,16 @@ public class TvPlaybackFragment extends PlaybackSupportFragment {
 
     private void resetPlaybackRow() {
         mDuration = 0;
+        mProgressClock.setDuration(0);
         mPlaybackControlsRow.setTotalTime(0);
         mPlaybackControlsRow.setCurrentTime(0);
         mRowsAdapter.notifyArrayItemRangeChanged(
                 mRowsAdapter.indexOf(mPlaybackControlsRow), 1);
     }
 
-    private int getUpdatePeriod() {
-        if (getView() == null || mPlaybackControlsRow.getTotalTime() <= 0) {
-            return DEFAULT_UPDATE_PERIOD;
-        }
-        return Math.max(UPDATE_PERIOD, mPlaybackControlsRow.getTotalTime() / getView().getWidth());
-    }
-
-    protected void startProgressAutomation() {
-        if (mHandler != null && mRunnable != null) {
-            mHandler.removeCallbacks(mRunnable);
-        }
-        mRunnable = new Runnable() {
-            @Override
-            public void run() {
-                long elapsedTime = SystemClock.elapsedRealtime() - mLastPositionUpdateTime;
-                int currentPosition = Math.min(mDuration, (int) (mLastPosition + elapsedTime));
-                mPlaybackControlsRow.setCurrentTime(currentPosition);
-                mHandler.postDelayed(this, getUpdatePeriod());
-            }
-        };
-        mHandler.postDelayed(mRunnable, getUpdatePeriod());
-        setFadingEnabled(true);
-    }
-
-    protected void stopProgressAutomation() {
-        if (mHandler != null && mRunnable != null) {
-            mHandler.removeCallbacks(mRunnable);
-            setFadingEnabled(false);
-        }
-        mPlaybackControlsRow.setCurrentTime((int) mLastPosition);
+    private void updateProgressStep() {
+        int width = getView() == null ? 0 : getView().getWidth();
+        mProgressClock.setStep(ProgressClock.getStepForWidth(mDuration, width));
     }
 
     private void updateAlbumArt(Uri artUri) {
@@ -274,6 +261,8 @@ public class TvPlaybackFragment extends PlaybackSupportFragment {
         }
         mDuration = (int) metadata.getLong(MediaMetadataCompat.METADATA_KEY_DURATION);
         mPlaybackControlsRow.setTotalTime(mDuration);
+        mProgressClock.setDuration(mDuration);
+        updateProgressStep();
         ((MutableMediaMetadataHolder) mPlaybackControlsRow.getItem()).metadata = metadata;
         mRowsAdapter.notifyArrayItemRangeChanged(
                 mRowsAdapter.indexOf(mPlaybackControlsRow), 1);
@@ -285,15 +274,14 @@ public class TvPlaybackFragment extends PlaybackSupportFragment {
             // We only update playback state after we get a valid metadata.
             return;
         }
-        mLastPosition = state.getPosition();
-        mLastPositionUpdateTime = state.getLastPositionUpdateTime();
+        mProgressClock.setPlaybackState(state);
         switch (state.getState()) {
             case PlaybackStateCompat.STATE_PLAYING:
-                startProgressAutomation();
+                setFadingEnabled(true);
                 mPlayPauseAction.setIndex(PlayPauseAction.PAUSE);
                 break;
             case PlaybackStateCompat.STATE_PAUSED:
-                stopProgressAutomation();
+                setFadingEnabled(false);
                 mPlayPauseAction.setIndex(PlayPauseAction.PLAY);
                 break;
         }
@@ -70,8 +70,10 @@ public class BitmapHelper {
             is = new BufferedInputStream(urlConnection.getInputStream());
             is.mark(MAX_READ_LIMIT_PER_IMG);
             int scaleFactor = findScaleFactor(width, height, is);
-            LogHelper.d(TAG, "Scaling bitmap ", uri, " by factor ", scaleFactor, " to support ",
-                    width, "x", height, "requested dimension");
+            if (LogHelper.isDebugEnabled(TAG)) {
+                LogHelper.d(TAG, "Scaling bitmap ", uri, " by factor ", scaleFactor,
+                        " to support ", width, "x", height, "requested dimension");
+            }
             is.reset();
             return scaleBitmap(scaleFactor, is);
         } finally {
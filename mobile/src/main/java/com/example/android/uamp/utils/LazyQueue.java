@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.utils;
+
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+
+import com.example.android.uamp.model.MusicProvider;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A playing queue that only holds the music IDs of its tracks and the browsing categories they
+ * were picked from.
+ *
+ * The {@link MediaSessionCompat.QueueItem} of a position is created the first time it's needed,
+ * and kept afterwards. Its description is built from the track's own description, with the
+ * hierarchy-aware mediaID, instead of copying the whole track metadata. Code that only needs a
+ * part of the queue, such as a window around the current item (see {@link #subList(int, int)}),
+ * doesn't create the items outside of it.
+ *
+ * Like other queues, it can't be modified. The queue ID of an item is its position.
+ */
+public class LazyQueue extends AbstractList<MediaSessionCompat.QueueItem>
+        implements RandomAccess {
+
+    private final MusicProvider mMusicProvider;
+    private final List<String> mMusicIds;
+    private final String[] mCategories;
+    // Created on demand. An item is immutable, so at worst two threads create the same one.
+    private final MediaSessionCompat.QueueItem[] mItems;
+
+    public LazyQueue(MusicProvider musicProvider, List<String> musicIds, String... categories) {
+        mMusicProvider = musicProvider;
+        mMusicIds = musicIds;
+        mCategories = categories;
+        mItems = new MediaSessionCompat.QueueItem[musicIds.size()];
+    }
+
+    @Override
+    public MediaSessionCompat.QueueItem get(int index) {
+        MediaSessionCompat.QueueItem item = mItems[index];
+        if (item == null) {
+            item = new MediaSessionCompat.QueueItem(createDescription(index), index);
+            mItems[index] = item;
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        return mMusicIds.size();
+    }
+
+    /**
+     * @return the music ID at the given position, without creating its item.
+     */
+    public String getMusicId(int index) {
+        return mMusicIds.get(index);
+    }
+
+    /**
+     * @return the music IDs of the queue, in order.
+     */
+    public List<String> getMusicIds() {
+        return Collections.unmodifiableList(mMusicIds);
+    }
+
+    /**
+     * @return the browsing categories the tracks were picked from.
+     */
+    public String[] getCategories() {
+        return mCategories.clone();
+    }
+
+    /**
+     * @return the hierarchy-aware mediaID at the given position, without creating its item.
+     */
+    public String getMediaId(int index) {
+        MediaSessionCompat.QueueItem item = mItems[index];
+        if (item != null) {
+            return item.getDescription().getMediaId();
+        }
+        return MediaIDHelper.createMediaID(mMusicIds.get(index), mCategories);
+    }
+
+    private MediaDescriptionCompat createDescription(int index) {
+        String musicId = mMusicIds.get(index);
+        // We create a hierarchy-aware mediaID, so we know what the queue is about by looking
+        // at the QueueItem media IDs.
+        MediaDescriptionCompat.Builder builder = new MediaDescriptionCompat.Builder()
+                .setMediaId(MediaIDHelper.createMediaID(musicId, mCategories));
+        MediaMetadataCompat track = mMusicProvider.getMusic(musicId);
+        if (track != null) {
+            MediaDescriptionCompat description = track.getDescription();
+            builder.setTitle(description.getTitle())
+                    .setSubtitle(description.getSubtitle())
+                    .setDescription(description.getDescription())
+                    .setIconBitmap(description.getIconBitmap())
+                    .setIconUri(description.getIconUri())
+                    .setMediaUri(description.getMediaUri())
+                    .setExtras(description.getExtras());
+        }
+        return builder.build();
+    }
+}
@@ -41,6 +41,39 @@ public class LogHelper {
     }
 
 
+    /**
+     * Whether a message of the given level would be logged for the tag. VERBOSE and DEBUG
+     * messages are only logged if build type is DEBUG.
+     *
+     * Callers can check it before building arguments that are expensive, or that need to be
+     * boxed or put in an array, so nothing is allocated when the level is disabled.
+     */
+    public static boolean isLoggable(String tag, int level) {
+        if (level < Log.INFO && !BuildConfig.DEBUG) {
+            return false;
+        }
+        return Log.isLoggable(tag, level);
+    }
+
+    public static boolean isDebugEnabled(String tag) {
+        return isLoggable(tag, Log.DEBUG);
+    }
+
+    // The fixed arity overloads avoid the varargs array, and the long one avoids boxing. The
+    // level is checked before the message is built.
+
+    public static void v(String tag, Object message) {
+        if (isLoggable(tag, Log.VERBOSE)) {
+            Log.println(Log.VERBOSE, tag, String.valueOf(message));
+        }
+    }
+
+    public static void v(String tag, Object message1, Object message2) {
+        if (isLoggable(tag, Log.VERBOSE)) {
+            Log.println(Log.VERBOSE, tag, String.valueOf(message1) + message2);
+        }
+    }
+
     public static void v(String tag, Object... messages) {
         // Only log VERBOSE if build type is DEBUG
         if (BuildConfig.DEBUG) {
@@ -48,6 +81,30 @@ public class LogHelper {
         }
     }
 
+    public static void d(String tag, Object message) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            Log.println(Log.DEBUG, tag, String.valueOf(message));
+        }
+    }
+
+    public static void d(String tag, Object message1, Object message2) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            Log.println(Log.DEBUG, tag, String.valueOf(message1) + message2);
+        }
+    }
+
+    public static void d(String tag, Object message1, long message2) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            Log.println(Log.DEBUG, tag, String.valueOf(message1) + message2);
+        }
+    }
+
+    public static void d(String tag, Object message1, Object message2, Object message3) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            Log.println(Log.DEBUG, tag, String.valueOf(message1) + message2 + message3);
+        }
+    }
+
     public static void d(String tag, Object... messages) {
         // Only log DEBUG if build type is DEBUG
         if (BuildConfig.DEBUG) {
@@ -20,7 +20,6 @@ import android.app.Activity;
 import android.support.annotation.NonNull;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.session.MediaControllerCompat;
-import android.text.TextUtils;
 
 import java.util.Arrays;
 
@@ -36,11 +35,12 @@ public class MediaIDHelper {
     public static final String MEDIA_ID_ROOT = "__ROOT__";
     public static final String MEDIA_ID_MUSICS_BY_GENRE = "__BY_GENRE__";
     public static final String MEDIA_ID_MUSICS_BY_SEARCH = "__BY_SEARCH__";
+    public static final String MEDIA_ID_MUSICS_BY_FAVORITES = "__BY_FAVORITES__";
 
     /**分割线  /  */
-    private static final char CATEGORY_SEPARATOR = '/';
+    static final char CATEGORY_SEPARATOR = '/';
     /**分割线 |   */
-    private static final char LEAF_SEPARATOR = '|';
+    static final char LEAF_SEPARATOR = '|';
 
     /**
      * Create a String value that represents a playable or a browsable media.
@@ -118,11 +118,62 @@ public class MediaIDHelper {
      *                获取层次数组
      */
     public static @NonNull String[] getHierarchy(@NonNull String mediaID) {
+        int end = mediaID.indexOf(LEAF_SEPARATOR);
+        if (end < 0) {
+            end = mediaID.length();
+        }
+        int separator = mediaID.indexOf(CATEGORY_SEPARATOR);
+        if (separator < 0 || separator >= end) {
+            return new String[] {mediaID.substring(0, end)};
+        }
+        // Like String.split, trailing empty categories are dropped.
+        while (end > 0 && mediaID.charAt(end - 1) == CATEGORY_SEPARATOR) {
+            end--;
+        }
+        int count = end == 0 ? 0 : 1;
+        for (int i = 0; i < end; i++) {
+            if (mediaID.charAt(i) == CATEGORY_SEPARATOR) {
+                count++;
+            }
+        }
+        String[] hierarchy = new String[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int next = mediaID.indexOf(CATEGORY_SEPARATOR, start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            hierarchy[i] = mediaID.substring(start, next);
+            start = next + 1;
+        }
+        return hierarchy;
+    }
+
+    /**
+     * @return whether the given mediaID has the given musicID, without allocating.
+     */
+    public static boolean hasMusicID(@NonNull String mediaID, String musicID) {
         int pos = mediaID.indexOf(LEAF_SEPARATOR);
-        if (pos >= 0) {
-            mediaID = mediaID.substring(0, pos);
+        return pos >= 0 && musicID != null
+                && mediaID.length() - pos - 1 == musicID.length()
+                && mediaID.startsWith(musicID, pos + 1);
+    }
+
+    /**
+     * @return whether both mediaIDs have the same categories, regardless of their musicID,
+     * without allocating.
+     */
+    public static boolean isSameBrowsingCategory(@NonNull String mediaID,
+                                                 @NonNull String otherMediaID) {
+        int end = mediaID.indexOf(LEAF_SEPARATOR);
+        if (end < 0) {
+            end = mediaID.length();
+        }
+        int otherEnd = otherMediaID.indexOf(LEAF_SEPARATOR);
+        if (otherEnd < 0) {
+            otherEnd = otherMediaID.length();
         }
-        return mediaID.split(String.valueOf(CATEGORY_SEPARATOR));
+        return end == otherEnd && mediaID.regionMatches(0, otherMediaID, 0, end);
     }
 
     /**从MediaID中提取浏览类别*/
@@ -166,10 +217,9 @@ public class MediaIDHelper {
         if (controller != null && controller.getMetadata() != null) {
             String currentPlayingMediaId = controller.getMetadata().getDescription()
                     .getMediaId();
-            String itemMusicId = MediaIDHelper.extractMusicIDFromMediaID(
-                    mediaItem.getDescription().getMediaId());
-            if (currentPlayingMediaId != null
-                    && TextUtils.equals(currentPlayingMediaId, itemMusicId)) {
+            String itemMediaId = mediaItem.getDescription().getMediaId();
+            if (currentPlayingMediaId != null && itemMediaId != null
+                    && hasMusicID(itemMediaId, currentPlayingMediaId)) {
                 return true;
             }
         }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.uamp.utils;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process wide timing and counting of the operations that matter for performance, so they can
+ * be inspected on a device with {@code adb shell dumpsys activity service
+ * com.example.android.uamp/.MusicService}.
+ *
+ * A span is the time between {@link #now()} and {@link #endSpan(String, long)}, measured with the
+ * monotonic {@link System#nanoTime()}. The durations of each span name go to a histogram that
+ * keeps the last {@link #HISTOGRAM_SAMPLES} samples in a ring buffer, and the last
+ * {@link #RECENT_SPANS} spans are kept in order, to see what happened recently. Counters count
+ * events. Recording is lock free and doesn't allocate once a name has been seen, so it can be
+ * called from any thread, including the playback threads. Dumping may see a sample being
+ * written, which is acceptable for diagnostics.
+ */
+public final class PerfMetrics {
+
+    // Span names.
+    public static final String SPAN_CATALOG_RETRIEVE = "catalog.retrieve";
+    public static final String SPAN_LOAD_CHILDREN = "browse.loadChildren";
+    public static final String SPAN_HANDLE_PLAY = "playback.handlePlayRequest";
+    public static final String SPAN_LOCAL_FIRST_AUDIO = "local.timeToFirstAudio";
+    public static final String SPAN_CAST_LOAD = "cast.timeToPlaying";
+    public static final String SPAN_ART_FETCH = "art.fetch";
+
+    // Counter names.
+    public static final String COUNTER_CATALOG_RETRIEVE_FAILED = "catalog.retrieveFailed";
+    public static final String COUNTER_LOAD_CHILDREN_DEFERRED = "browse.loadChildrenDeferred";
+    public static final String COUNTER_LOCAL_REBUFFER = "local.rebuffer";
+    public static final String COUNTER_CAST_MEDIA_INFO_HIT = "cast.mediaInfoCacheHit";
+    public static final String COUNTER_CAST_MEDIA_INFO_MISS = "cast.mediaInfoCacheMiss";
+    public static final String COUNTER_ART_CACHE_HIT = "art.cacheHit";
+    public static final String COUNTER_ART_FETCH_FAILED = "art.fetchFailed";
+    public static final String COUNTER_STATE_PUBLISHED = "session.statePublished";
+    public static final String COUNTER_STATE_SKIPPED = "session.stateSkipped";
+    public static final String COUNTER_NOTIFICATION_POSTED = "notification.posted";
+    public static final String COUNTER_NOTIFICATION_SKIPPED = "notification.skipped";
+
+    static final int HISTOGRAM_SAMPLES = 128;
+    static final int RECENT_SPANS = 64;
+
+    private static final ConcurrentMap<String, Histogram> sHistograms =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> sCounters = new ConcurrentHashMap<>();
+
+    // Ring buffer of the last spans: name, start and duration of each.
+    private static final AtomicInteger sRecentSpanCount = new AtomicInteger();
+    private static final AtomicReferenceArray<String> sRecentSpanNames =
+            new AtomicReferenceArray<>(RECENT_SPANS);
+    private static final AtomicLongArray sRecentSpanStarts = new AtomicLongArray(RECENT_SPANS);
+    private static final AtomicLongArray sRecentSpanDurations =
+            new AtomicLongArray(RECENT_SPANS);
+
+    private PerfMetrics() {
+    }
+
+    /**
+     * @return the start of a span, to pass to {@link #endSpan(String, long)}. On Android, this
+     * is the time since boot, so it's never negative.
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a span that started at the given {@link #now()} and ends now.
+     */
+    public static void endSpan(String name, long startNanos) {
+        long end = now();
+        record(name, startNanos, end - startNanos);
+    }
+
+    /**
+     * Records a span of the given duration that ends now, for durations measured elsewhere.
+     */
+    public static void recordDuration(String name, long durationNanos) {
+        record(name, now() - durationNanos, durationNanos);
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        AtomicLong counter = sCounters.get(name);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = sCounters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.addAndGet(delta);
+    }
+
+    public static long getCount(String name) {
+        AtomicLong counter = sCounters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * @return the number of spans recorded with the given name.
+     */
+    public static long getSpanCount(String name) {
+        Histogram histogram = sHistograms.get(name);
+        return histogram == null ? 0 : histogram.mCount.get();
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public static void reset() {
+        sHistograms.clear();
+        sCounters.clear();
+        sRecentSpanCount.set(0);
+    }
+
+    /**
+     * Writes the counters, the histogram of each span and the recent spans.
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("Counters:");
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(sCounters).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue().get());
+        }
+
+        writer.println("Spans (ms, percentiles of the last " + HISTOGRAM_SAMPLES + "):");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(sHistograms).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+
+        writer.println("Recent spans (started ms ago, name, duration ms):");
+        int count = sRecentSpanCount.get();
+        long now = now();
+        for (int i = Math.max(0, count - RECENT_SPANS); i < count; i++) {
+            int slot = i % RECENT_SPANS;
+            writer.println("  " + toMillis(now - sRecentSpanStarts.get(slot)) + " "
+                    + sRecentSpanNames.get(slot) + " "
+                    + toMillis(sRecentSpanDurations.get(slot)));
+        }
+    }
+
+    private static void record(String name, long startNanos, long durationNanos) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram();
+            histogram = sHistograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        histogram.add(durationNanos);
+
+        int slot = (sRecentSpanCount.getAndIncrement() & Integer.MAX_VALUE) % RECENT_SPANS;
+        sRecentSpanNames.set(slot, name);
+        sRecentSpanStarts.set(slot, startNanos);
+        sRecentSpanDurations.set(slot, durationNanos);
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.US, "%.1f", nanos / 1000000.0);
+    }
+
+    private static final class Histogram {
+        private final AtomicLongArray mSamples = new AtomicLongArray(HISTOGRAM_SAMPLES);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotal = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        void add(long value) {
+            long index = mCount.getAndIncrement();
+            mSamples.set((int) (index % HISTOGRAM_SAMPLES), value);
+            mTotal.addAndGet(value);
+            long max;
+            do {
+                max = mMax.get();
+            } while (value > max && !mMax.compareAndSet(max, value));
+        }
+
+        @Override
+        public String toString() {
+            long count = mCount.get();
+            int size = (int) Math.min(count, HISTOGRAM_SAMPLES);
+            if (size == 0) {
+                return "none";
+            }
+            long[] samples = new long[size];
+            for (int i = 0; i < size; i++) {
+                samples[i] = mSamples.get(i);
+            }
+            Arrays.sort(samples);
+            return "count=" + count
+                    + " avg=" + toMillis(mTotal.get() / count)
+                    + " p50=" + toMillis(samples[size / 2])
+                    + " p90=" + toMillis(samples[size * 9 / 10])
+                    + " p99=" + toMillis(samples[size * 99 / 100])
+                    + " max=" + toMillis(mMax.get());
+        }
+    }
+}
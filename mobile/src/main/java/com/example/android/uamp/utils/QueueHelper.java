@@ -29,6 +29,7 @@ import com.example.android.uamp.model.MusicProvider;
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_FAVORITES;
 import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE;
 import static com.example.android.uamp.utils.MediaIDHelper.MEDIA_ID_MUSICS_BY_SEARCH;
 
@@ -47,6 +48,12 @@ public class QueueHelper {
         // extract the browsing hierarchy from the media ID:
         String[] hierarchy = MediaIDHelper.getHierarchy(mediaId);
 
+        // Favorites have no category value.
+        if (hierarchy.length == 1 && hierarchy[0].equals(MEDIA_ID_MUSICS_BY_FAVORITES)) {
+            return convertToQueue(musicProvider, musicProvider.getFavoriteMusic(),
+                    MEDIA_ID_MUSICS_BY_FAVORITES);
+        }
+
         if (hierarchy.length != 2) {
             LogHelper.e(TAG, "Could not build a playing queue for this mediaId: ", mediaId);
             return null;
@@ -69,7 +76,7 @@ public class QueueHelper {
             return null;
         }
 
-        return convertToQueue(tracks, hierarchy[0], hierarchy[1]);
+        return convertToQueue(musicProvider, tracks, hierarchy[0], hierarchy[1]);
     }
 
     public static List<MediaSessionCompat.QueueItem> getPlayingQueueFromSearch(String query,
@@ -114,7 +121,7 @@ public class QueueHelper {
             }
         }
 
-        return convertToQueue(result, MEDIA_ID_MUSICS_BY_SEARCH, query);
+        return convertToQueue(musicProvider, result, MEDIA_ID_MUSICS_BY_SEARCH, query);
     }
 
 
@@ -143,28 +150,15 @@ public class QueueHelper {
     }
 
     private static List<MediaSessionCompat.QueueItem> convertToQueue(
-            Iterable<MediaMetadataCompat> tracks, String... categories) {
-        List<MediaSessionCompat.QueueItem> queue = new ArrayList<>();
-        int count = 0;
+            MusicProvider musicProvider, Iterable<MediaMetadataCompat> tracks,
+            String... categories) {
+        // Only the music IDs are kept: queue items are created when they are needed. We don't
+        // expect queues to change after created, so the item index is used as the queueId.
+        List<String> musicIds = new ArrayList<>();
         for (MediaMetadataCompat track : tracks) {
-
-            // We create a hierarchy-aware mediaID, so we know what the queue is about by looking
-            // at the QueueItem media IDs.
-            String hierarchyAwareMediaID = MediaIDHelper.createMediaID(
-                    track.getDescription().getMediaId(), categories);
-
-            MediaMetadataCompat trackCopy = new MediaMetadataCompat.Builder(track)
-                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, hierarchyAwareMediaID)
-                    .build();
-
-            // We don't expect queues to change after created, so we use the item index as the
-            // queueId. Any other number unique in the queue would work.
-            MediaSessionCompat.QueueItem item = new MediaSessionCompat.QueueItem(
-                    trackCopy.getDescription(), count++);
-            queue.add(item);
+            musicIds.add(track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID));
         }
-        return queue;
-
+        return new LazyQueue(musicProvider, musicIds, categories);
     }
 
     /**
@@ -184,7 +178,7 @@ public class QueueHelper {
         }
         LogHelper.d(TAG, "getRandomQueue: result.size=", result.size());
 
-        return convertToQueue(result, MEDIA_ID_MUSICS_BY_SEARCH, "random");
+        return convertToQueue(musicProvider, result, MEDIA_ID_MUSICS_BY_SEARCH, "random");
     }
 
     public static boolean isIndexPlayable(int index, List<MediaSessionCompat.QueueItem> queue) {
@@ -237,11 +231,10 @@ public class QueueHelper {
             long currentPlayingQueueId = controller.getPlaybackState().getActiveQueueItemId();
             String currentPlayingMediaId = controller.getMetadata().getDescription()
                     .getMediaId();
-            String itemMusicId = MediaIDHelper.extractMusicIDFromMediaID(
-                    queueItem.getDescription().getMediaId());
+            String itemMediaId = queueItem.getDescription().getMediaId();
             if (queueItem.getQueueId() == currentPlayingQueueId
-                    && currentPlayingMediaId != null
-                    && TextUtils.equals(currentPlayingMediaId, itemMusicId)) {
+                    && currentPlayingMediaId != null && itemMediaId != null
+                    && MediaIDHelper.hasMusicID(itemMediaId, currentPlayingMediaId)) {
                 return true;
             }
         }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Unit tests for the {@link BufferingPolicy} class and the {@link RebufferHistory} it's
+ * given. Checks that the policy follows recent network conditions only.
+ */
+@RunWith(JUnit4.class)
+public class BufferingPolicyTest {
+
+    private static final long FAST_BPS = 8 * 1024 * 1024;
+    private static final long SLOW_BPS = 256 * 1024;
+    private static final long WINDOW_MS = 60000;
+
+    @Test
+    public void testBandwidthTiers() throws Exception {
+        BufferingPolicy fast = BufferingPolicy.create(false, FAST_BPS, 0);
+        BufferingPolicy slow = BufferingPolicy.create(false, SLOW_BPS, 0);
+        BufferingPolicy normal = BufferingPolicy.create(false, 1024 * 1024, 0);
+        assertNotEquals(fast, slow);
+        assertNotEquals(fast, normal);
+        assertNotEquals(slow, normal);
+        assertEquals(normal, BufferingPolicy.create(false, -1, 0));
+    }
+
+    @Test
+    public void testRebuffersMakeFastNetworkSlow() throws Exception {
+        BufferingPolicy slow = BufferingPolicy.create(false, SLOW_BPS, 0);
+        assertEquals(slow, BufferingPolicy.create(false, FAST_BPS, 2));
+        assertNotEquals(slow, BufferingPolicy.create(false, FAST_BPS, 1));
+    }
+
+    @Test
+    public void testRecentRebuffers() throws Exception {
+        RebufferHistory history = new RebufferHistory(WINDOW_MS);
+        history.record(1000);
+        history.record(5000);
+        assertEquals(2, history.getRecentCount(5000));
+        assertEquals(1, history.getRecentCount(WINDOW_MS + 1001));
+        assertEquals(0, history.getRecentCount(WINDOW_MS + 5001));
+        assertEquals(2, history.getTotalCount());
+    }
+
+    @Test
+    public void testTierReturnsToNormalOnceRebuffersAreOld() throws Exception {
+        RebufferHistory history = new RebufferHistory(WINDOW_MS);
+        BufferingPolicy fast = BufferingPolicy.create(false, FAST_BPS, 0);
+        history.record(1000);
+        history.record(2000);
+        assertNotEquals(fast,
+                BufferingPolicy.create(false, FAST_BPS, history.getRecentCount(2000)));
+
+        long later = 2000 + WINDOW_MS + 1;
+        assertEquals(fast,
+                BufferingPolicy.create(false, FAST_BPS, history.getRecentCount(later)));
+
+        // A new stall alone doesn't bring the slow tier back.
+        history.record(later);
+        assertEquals(fast,
+                BufferingPolicy.create(false, FAST_BPS, history.getRecentCount(later)));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.content.res.Resources;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+
+import com.example.android.uamp.model.MusicProvider;
+import com.example.android.uamp.utils.LazyQueue;
+import com.example.android.uamp.utils.MediaIDHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the indexes of the {@link QueueManager} class, next to its instrumented
+ * QueueManagerTest. Exercises the lookup of queue items by queue ID and by mediaID, which uses
+ * indexes rebuilt each time the queue is set.
+ */
+@RunWith(JUnit4.class)
+public class QueueManagerIndexTest {
+
+    private static final String ROCK = "Rock";
+    private static final String JAZZ = "Jazz";
+
+    private MusicProvider mMusicProvider;
+    private QueueManager mQueueManager;
+
+    @Before
+    public void setUp() {
+        mMusicProvider = mock(MusicProvider.class);
+        mQueueManager = new QueueManager(mMusicProvider, mock(Resources.class),
+                mock(QueueManager.MetadataUpdateListener.class));
+    }
+
+    @Test
+    public void testFindByQueueId() throws Exception {
+        mQueueManager.setCurrentQueue("title", Arrays.asList(
+                createItem("1", ROCK, 100), createItem("2", ROCK, 200),
+                createItem("3", ROCK, 300)));
+
+        assertTrue(mQueueManager.setCurrentQueueItem(300));
+        assertEquals(2, mQueueManager.getCurrentIndex());
+        assertTrue(mQueueManager.setCurrentQueueItem(100));
+        assertEquals(0, mQueueManager.getCurrentIndex());
+
+        // A position is not a queue ID.
+        assertFalse(mQueueManager.setCurrentQueueItem(1));
+        assertEquals(0, mQueueManager.getCurrentIndex());
+    }
+
+    @Test
+    public void testFindByMediaIdWithRepeatedMusicIds() throws Exception {
+        mQueueManager.setCurrentQueue("title", Arrays.asList(
+                createItem("1", ROCK, 0), createItem("1", JAZZ, 1),
+                createItem("2", ROCK, 2), createItem("1", ROCK, 3)));
+
+        // The same music ID in another category is another item.
+        assertTrue(mQueueManager.setCurrentQueueItem(createMediaId("1", JAZZ)));
+        assertEquals(1, mQueueManager.getCurrentIndex());
+        // A repeated mediaID finds its first occurrence.
+        assertTrue(mQueueManager.setCurrentQueueItem(createMediaId("1", ROCK)));
+        assertEquals(0, mQueueManager.getCurrentIndex());
+        assertTrue(mQueueManager.setCurrentQueueItem(createMediaId("2", ROCK)));
+        assertEquals(2, mQueueManager.getCurrentIndex());
+
+        assertFalse(mQueueManager.setCurrentQueueItem(createMediaId("2", JAZZ)));
+        assertEquals(2, mQueueManager.getCurrentIndex());
+    }
+
+    @Test
+    public void testInitialMediaId() throws Exception {
+        mQueueManager.setCurrentQueue("title", Arrays.asList(
+                createItem("1", ROCK, 0), createItem("2", ROCK, 1),
+                createItem("2", ROCK, 2)), createMediaId("2", ROCK));
+        assertEquals(1, mQueueManager.getCurrentIndex());
+
+        mQueueManager.setCurrentQueue("title", Collections.singletonList(
+                createItem("1", ROCK, 0)), createMediaId("3", ROCK));
+        assertEquals(0, mQueueManager.getCurrentIndex());
+    }
+
+    @Test
+    public void testIndexesAreReplacedWithTheQueue() throws Exception {
+        mQueueManager.setCurrentQueue("first", Arrays.asList(
+                createItem("1", ROCK, 10), createItem("2", ROCK, 11)));
+        mQueueManager.setCurrentQueue("second", Arrays.asList(
+                createItem("3", JAZZ, 20), createItem("4", JAZZ, 21)));
+
+        assertFalse(mQueueManager.setCurrentQueueItem(11));
+        assertFalse(mQueueManager.setCurrentQueueItem(createMediaId("2", ROCK)));
+        assertTrue(mQueueManager.setCurrentQueueItem(21));
+        assertEquals(1, mQueueManager.getCurrentIndex());
+
+        mQueueManager.setCurrentQueue("empty",
+                Collections.<MediaSessionCompat.QueueItem>emptyList());
+        assertFalse(mQueueManager.setCurrentQueueItem(20));
+        assertFalse(mQueueManager.setCurrentQueueItem(createMediaId("3", JAZZ)));
+    }
+
+    @Test
+    public void testLazyQueueIndexes() throws Exception {
+        List<String> musicIds = Arrays.asList("1", "2", "1", "3");
+        mQueueManager.setCurrentQueue("title", new LazyQueue(mMusicProvider, musicIds,
+                MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE, ROCK), createMediaId("3", ROCK));
+        assertEquals(3, mQueueManager.getCurrentIndex());
+
+        // The queue ID of a lazy queue item is its position.
+        assertTrue(mQueueManager.setCurrentQueueItem(2));
+        assertEquals(2, mQueueManager.getCurrentIndex());
+        assertTrue(mQueueManager.setCurrentQueueItem(createMediaId("1", ROCK)));
+        assertEquals(0, mQueueManager.getCurrentIndex());
+        assertFalse(mQueueManager.setCurrentQueueItem(createMediaId("1", JAZZ)));
+
+        // Indexing and finding items doesn't create them.
+        verify(mMusicProvider, never()).getMusic(anyString());
+    }
+
+    private static String createMediaId(String musicId, String genre) {
+        return MediaIDHelper.createMediaID(musicId, MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE,
+                genre);
+    }
+
+    private static MediaSessionCompat.QueueItem createItem(String musicId, String genre,
+                                                          long queueId) {
+        MediaDescriptionCompat description = new MediaDescriptionCompat.Builder()
+                .setMediaId(createMediaId(musicId, genre))
+                .build();
+        return new MediaSessionCompat.QueueItem(description, queueId);
+    }
+}
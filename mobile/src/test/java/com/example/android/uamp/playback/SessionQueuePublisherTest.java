@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.playback;
+
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the {@link SessionQueuePublisher} class. Checks which part of a queue is
+ * published around the current item, and when it's moved.
+ */
+@RunWith(JUnit4.class)
+public class SessionQueuePublisherTest {
+
+    private MediaSessionCompat mSession;
+    private SessionQueuePublisher mPublisher;
+
+    @Before
+    public void setUp() {
+        mSession = mock(MediaSessionCompat.class);
+        mPublisher = new SessionQueuePublisher(mSession) {
+            @Override
+            long getParcelledSize(List<MediaSessionCompat.QueueItem> items) {
+                return items.size();
+            }
+        };
+    }
+
+    @Test
+    public void testShortQueueIsPublishedWhole() throws Exception {
+        mPublisher.setQueue("title", createQueue(50), 10);
+        verify(mSession).setQueueTitle("title");
+        assertPublishedWindow(0, 50);
+    }
+
+    @Test
+    public void testWindowAroundCurrentItem() throws Exception {
+        mPublisher.setQueue("title", createQueue(500), 100);
+        // 20 items before the current one and 80 after it.
+        assertPublishedWindow(80, 181);
+        assertEquals(101, mPublisher.getWindowBytes());
+    }
+
+    @Test
+    public void testWindowAtTheEndsOfTheQueue() throws Exception {
+        List<MediaSessionCompat.QueueItem> queue = createQueue(500);
+        mPublisher.setQueue("title", queue, 5);
+        assertPublishedWindow(0, 86);
+        mPublisher.setQueue("title", queue, 495);
+        assertPublishedWindow(475, 500);
+    }
+
+    @Test
+    public void testWindowMovesNearItsEnd() throws Exception {
+        mPublisher.setQueue("title", createQueue(500), 100);
+        for (int index = 90; index <= 170; index++) {
+            mPublisher.onCurrentIndexChanged(index);
+        }
+        assertEquals(1, mPublisher.getPublishCount());
+
+        // Within 10 items of the end of the window, it's centered again on the current item.
+        mPublisher.onCurrentIndexChanged(171);
+        assertEquals(2, mPublisher.getPublishCount());
+        assertPublishedWindow(151, 252);
+    }
+
+    @Test
+    public void testWindowMovesNearItsStart() throws Exception {
+        mPublisher.setQueue("title", createQueue(500), 100);
+        mPublisher.onCurrentIndexChanged(90);
+        assertEquals(1, mPublisher.getPublishCount());
+
+        mPublisher.onCurrentIndexChanged(89);
+        assertEquals(2, mPublisher.getPublishCount());
+        assertPublishedWindow(69, 170);
+    }
+
+    @Test
+    public void testWindowDoesNotMoveAtTheEndsOfTheQueue() throws Exception {
+        List<MediaSessionCompat.QueueItem> queue = createQueue(500);
+        mPublisher.setQueue("title", queue, 5);
+        mPublisher.onCurrentIndexChanged(0);
+        assertEquals(1, mPublisher.getPublishCount());
+
+        mPublisher.setQueue("title", queue, 495);
+        mPublisher.onCurrentIndexChanged(499);
+        assertEquals(2, mPublisher.getPublishCount());
+    }
+
+    @Test
+    public void testNoQueue() throws Exception {
+        mPublisher.onCurrentIndexChanged(3);
+        mPublisher.setQueue("title", null, 0);
+        verify(mSession).setQueue(null);
+        assertEquals(0, mPublisher.getPublishCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertPublishedWindow(int start, int end) {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(mSession, times(mPublisher.getPublishCount())).setQueue(captor.capture());
+        List<MediaSessionCompat.QueueItem> window = captor.getValue();
+        assertEquals(end - start, window.size());
+        assertEquals(start, window.get(0).getQueueId());
+        assertEquals(end - 1, window.get(window.size() - 1).getQueueId());
+    }
+
+    private static List<MediaSessionCompat.QueueItem> createQueue(int size) {
+        List<MediaSessionCompat.QueueItem> queue = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            MediaDescriptionCompat description = new MediaDescriptionCompat.Builder()
+                    .setMediaId(String.valueOf(i))
+                    .build();
+            queue.add(new MediaSessionCompat.QueueItem(description, i));
+        }
+        return queue;
+    }
+}
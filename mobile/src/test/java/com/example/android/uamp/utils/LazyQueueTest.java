@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.utils;
+
+import android.support.v4.media.session.MediaSessionCompat;
+
+import com.example.android.uamp.model.MusicProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Unit tests for the {@link LazyQueue} class. Checks that items are created on demand, with
+ * their position as queue ID and a hierarchy-aware mediaID.
+ */
+@RunWith(JUnit4.class)
+public class LazyQueueTest {
+
+    private static final String[] CATEGORIES =
+            {MediaIDHelper.MEDIA_ID_MUSICS_BY_GENRE, "Rock & Roll"};
+
+    private MusicProvider mMusicProvider;
+    private LazyQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mMusicProvider = mock(MusicProvider.class);
+        mQueue = new LazyQueue(mMusicProvider,
+                Arrays.asList("10", "11", "12", "13", "14", "15"), CATEGORIES);
+    }
+
+    @Test
+    public void testQueueIdIsIndex() throws Exception {
+        assertEquals(6, mQueue.size());
+        for (int i = 0; i < mQueue.size(); i++) {
+            MediaSessionCompat.QueueItem item = mQueue.get(i);
+            assertEquals(i, item.getQueueId());
+            assertEquals(MediaIDHelper.createMediaID(mQueue.getMusicId(i), CATEGORIES),
+                    item.getDescription().getMediaId());
+        }
+    }
+
+    @Test
+    public void testItemsAreCreatedOnce() throws Exception {
+        MediaSessionCompat.QueueItem item = mQueue.get(2);
+        assertSame(item, mQueue.get(2));
+        verify(mMusicProvider, times(1)).getMusic("12");
+    }
+
+    @Test
+    public void testIdsDoNotCreateItems() throws Exception {
+        assertEquals("13", mQueue.getMusicId(3));
+        assertEquals(MediaIDHelper.createMediaID("13", CATEGORIES), mQueue.getMediaId(3));
+        assertEquals(Arrays.asList("10", "11", "12", "13", "14", "15"), mQueue.getMusicIds());
+        assertArrayEquals(CATEGORIES, mQueue.getCategories());
+        verifyZeroInteractions(mMusicProvider);
+    }
+
+    @Test
+    public void testSubListOnlyCreatesItsItems() throws Exception {
+        List<MediaSessionCompat.QueueItem> window = mQueue.subList(2, 5);
+        assertEquals(3, window.size());
+        for (int i = 0; i < window.size(); i++) {
+            assertEquals(i + 2, window.get(i).getQueueId());
+            assertSame(mQueue.get(i + 2), window.get(i));
+        }
+        verify(mMusicProvider).getMusic("12");
+        verify(mMusicProvider).getMusic("13");
+        verify(mMusicProvider).getMusic("14");
+        verify(mMusicProvider, never()).getMusic("10");
+        verify(mMusicProvider, never()).getMusic("11");
+        verify(mMusicProvider, never()).getMusic("15");
+    }
+
+    @Test
+    public void testRepeatedMusicIds() throws Exception {
+        LazyQueue queue = new LazyQueue(mMusicProvider, Arrays.asList("10", "11", "10"),
+                CATEGORIES);
+        assertEquals(queue.getMediaId(0), queue.getMediaId(2));
+        assertEquals(0, queue.get(0).getQueueId());
+        assertEquals(2, queue.get(2).getQueueId());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCannotBeModified() throws Exception {
+        mQueue.set(0, mQueue.get(1));
+    }
+}
@@ -21,7 +21,9 @@ import org.junit.runners.JUnit4;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -99,4 +101,36 @@ public class MediaIDHelperTest {
         fail(MediaIDHelper.getParentMediaID(null));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSameBrowsingCategory() throws Exception {
+        String rock1 = MediaIDHelper.createMediaID("1", "BY_GENRE", "Rock");
+        String rock2 = MediaIDHelper.createMediaID("2", "BY_GENRE", "Rock");
+        String rockAndRoll = MediaIDHelper.createMediaID("1", "BY_GENRE", "Rock & Roll");
+        assertTrue(MediaIDHelper.isSameBrowsingCategory(rock1, rock2));
+        assertFalse(MediaIDHelper.isSameBrowsingCategory(rock1, rockAndRoll));
+    }
+
+    @Test
+    public void testHelpersMatchStringSplitting() throws Exception {
+        String[] mediaIDs = {
+                MediaIDHelper.createMediaID("784343", "BY_GENRE", "Classic 70's"),
+                MediaIDHelper.createMediaID("78A_88|X/3", "BY_GENRE", "Classic 70's"),
+                MediaIDHelper.createMediaID(null, "BY_GENRE", "Rock & Roll"),
+                MediaIDHelper.createMediaID(null, "BY_GENRE"),
+                MediaIDHelper.MEDIA_ID_ROOT,
+                "",
+        };
+        for (String mediaID : mediaIDs) {
+            int pos = mediaID.indexOf('|');
+            String[] expectedHierarchy = (pos >= 0 ? mediaID.substring(0, pos) : mediaID)
+                    .split("/");
+            assertArrayEquals(mediaID, expectedHierarchy, MediaIDHelper.getHierarchy(mediaID));
+            String musicID = pos >= 0 ? mediaID.substring(pos + 1) : null;
+            assertEquals(mediaID, musicID, MediaIDHelper.extractMusicIDFromMediaID(mediaID));
+            assertEquals(mediaID, musicID != null, MediaIDHelper.hasMusicID(mediaID, musicID));
+        }
+        assertFalse(MediaIDHelper.hasMusicID(
+                MediaIDHelper.createMediaID("78A_88|X/3", "BY_GENRE"), "78A_88"));
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.uamp.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link PerfMetrics} class.
+ */
+@RunWith(JUnit4.class)
+public class PerfMetricsTest {
+
+    @Before
+    public void setUp() {
+        PerfMetrics.reset();
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        PerfMetrics.increment("a");
+        PerfMetrics.increment("a");
+        PerfMetrics.add("b", 5);
+        assertEquals(2, PerfMetrics.getCount("a"));
+        assertEquals(5, PerfMetrics.getCount("b"));
+        assertEquals(0, PerfMetrics.getCount("c"));
+    }
+
+    @Test
+    public void testSpansFromManyThreads() throws Exception {
+        final int threads = 4;
+        final int spansPerThread = 1000;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < spansPerThread; j++) {
+                        PerfMetrics.endSpan("span", PerfMetrics.now());
+                        PerfMetrics.increment("counter");
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * spansPerThread, PerfMetrics.getSpanCount("span"));
+        assertEquals(threads * spansPerThread, PerfMetrics.getCount("counter"));
+    }
+
+    @Test
+    public void testDump() throws Exception {
+        // More samples than the histogram and recent spans keep.
+        for (int i = 1; i <= PerfMetrics.HISTOGRAM_SAMPLES * 2; i++) {
+            PerfMetrics.recordDuration("span", i * 1000000L);
+        }
+        PerfMetrics.increment("counter");
+
+        StringWriter out = new StringWriter();
+        PerfMetrics.dump(new PrintWriter(out));
+        String dump = out.toString();
+        assertTrue(dump, dump.contains("counter: 1"));
+        assertTrue(dump, dump.contains("span: count=" + PerfMetrics.HISTOGRAM_SAMPLES * 2));
+        // The maximum covers all samples, the percentiles only the last ones.
+        assertTrue(dump, dump.contains("max=" + PerfMetrics.HISTOGRAM_SAMPLES * 2 + ".0"));
+        assertTrue(dump, dump.contains("p50=" + (PerfMetrics.HISTOGRAM_SAMPLES * 3 / 2 + 1)
+                + ".0"));
+        assertEquals(PerfMetrics.RECENT_SPANS, dump.split(" span ").length - 1);
+    }
+}